@@ -0,0 +1,199 @@
+package com.something.liberty;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the compact binary map the server returns from /map and /omniscience when the request's
+ * Accept header is MEDIA_TYPE. It's much smaller than the JSON and quicker to parse on a phone.
+ *
+ * The layout is documented in the server's MapBinaryWriter.
+ *
+ * @author Alexander Pringle
+ */
+public class BinaryMapDecoder
+{
+    public static final String MEDIA_TYPE = "application/x-liberty-map";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_DELTA = 1;
+    private static final int POINT_LOCATION = 1;
+    private static final int POINT_ATTACKER = 2;
+    private static final int POINT_PARTICIPANTS = 4;
+    private static final int POINT_MESSAGE = 8;
+    private static final double COORDINATE_SCALE = 1e7;
+
+    // In the order of the server's EventType, which the map points refer to by ordinal
+    private static final String[] EVENT_TYPES = {
+            MapIconUtils.NEWS_TYPE_HIT, MapIconUtils.NEWS_TYPE_OUTGUNNED, MapIconUtils.NEWS_TYPE_MISS,
+            "LOCATION_UPDATE", "PLAYER_JOIN", "PLAYER_LEAVE"
+    };
+
+    private final byte[] data;
+    private int position = 0;
+
+    private BinaryMapDecoder(byte[] data)
+    {
+        this.data = data;
+    }
+
+    public static MapData decode(byte[] data) throws IOException
+    {
+        return new BinaryMapDecoder(data).readMapData();
+    }
+
+    private MapData readMapData() throws IOException
+    {
+        int version = readByte();
+        if(version != FORMAT_VERSION)
+        {
+            throw new IOException("Unsupported map format version " + version);
+        }
+        MapData mapData = new MapData();
+        if((readByte() & FLAG_DELTA) != 0)
+        {
+            mapData.cursor = readVarint();
+        }
+
+        int identityCount = (int) readVarint();
+        mapData.identities = new Identity[identityCount];
+        for(int i = 0; i < identityCount; i++)
+        {
+            mapData.identities[i] = new Identity(readString(), readString(), readString());
+        }
+
+        int mapPointCount = (int) readVarint();
+        mapData.mapPoints = new ArrayList<MapPoint>(mapPointCount);
+        long timeOccurred = 0;
+        long latitude = 0;
+        long longitude = 0;
+        for(int i = 0; i < mapPointCount; i++)
+        {
+            MapPoint mapPoint = new MapPoint();
+            int type = readByte();
+            mapPoint.type = type < EVENT_TYPES.length ? EVENT_TYPES[type] : null;
+            int flags = readByte();
+
+            timeOccurred += readSignedVarint();
+            mapPoint.timeOccurred = timeOccurred;
+
+            if((flags & POINT_LOCATION) != 0)
+            {
+                latitude += readSignedVarint();
+                longitude += readSignedVarint();
+                mapPoint.hasLocation = true;
+                mapPoint.latitude = latitude / COORDINATE_SCALE;
+                mapPoint.longitude = longitude / COORDINATE_SCALE;
+                mapPoint.locationUpdatedTimeMillis = timeOccurred + readSignedVarint();
+            }
+            if((flags & POINT_ATTACKER) != 0)
+            {
+                mapPoint.attackerIdentity = mapData.identities[(int) readVarint()];
+            }
+            if((flags & POINT_PARTICIPANTS) != 0)
+            {
+                mapPoint.participantIdentities = new Identity[(int) readVarint()];
+                for(int j = 0; j < mapPoint.participantIdentities.length; j++)
+                {
+                    mapPoint.participantIdentities[j] = mapData.identities[(int) readVarint()];
+                }
+            }
+            if((flags & POINT_MESSAGE) != 0)
+            {
+                mapPoint.message = readString();
+            }
+            mapData.mapPoints.add(mapPoint);
+        }
+        return mapData;
+    }
+
+    private int readByte() throws IOException
+    {
+        if(position >= data.length)
+        {
+            throw new IOException("Map data ended early");
+        }
+        return data[position++] & 0xFF;
+    }
+
+    private long readVarint() throws IOException
+    {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7)
+        {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in map data");
+    }
+
+    private long readSignedVarint() throws IOException
+    {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private String readString() throws IOException
+    {
+        int length = (int) readVarint() - 1;
+        if(length < 0)
+        {
+            return null;
+        }
+        if(position + length > data.length)
+        {
+            throw new IOException("Map data ended early");
+        }
+        try
+        {
+            String value = new String(data, position, length, "UTF-8");
+            position += length;
+            return value;
+        }
+        catch(UnsupportedEncodingException e)
+        {
+            throw new IOException(e.toString());
+        }
+    }
+
+    public static class MapData
+    {
+        /** The cursor to pass as ?since= next time, or null when the whole map was requested */
+        public Long cursor = null;
+        public Identity[] identities;
+        public List<MapPoint> mapPoints;
+    }
+
+    public static class Identity
+    {
+        public final String username;
+        public final String generatedName;
+        public final String colorAsHexString;
+
+        public Identity(String username, String generatedName, String colorAsHexString)
+        {
+            this.username = username;
+            this.generatedName = generatedName;
+            this.colorAsHexString = colorAsHexString;
+        }
+    }
+
+    public static class MapPoint
+    {
+        public String type;
+        public long timeOccurred;
+        public boolean hasLocation = false;
+        public double latitude;
+        public double longitude;
+        public long locationUpdatedTimeMillis;
+        public Identity attackerIdentity = null;
+        public Identity[] participantIdentities = null;
+        public String message = null;
+    }
+}
@@ -229,7 +229,11 @@ public class MainActivity extends ActionBarActivity
         JSONArray newsSummaries = new JSONArray();
         try
         {
-            JSONArray newsArray = new JSONArray(news);
+            // The map is requested with its identities in a dictionary, which each
+            // news item refers to by index rather than repeating them
+            JSONObject newsMap = new JSONObject(news);
+            JSONArray identities = newsMap.getJSONArray("identities");
+            JSONArray newsArray = newsMap.getJSONArray("mapPoints");
             for(int i=0; i < newsArray.length();i++)
             {
                 JSONObject currentNewsItem = (JSONObject) newsArray.get(i);
@@ -239,7 +243,7 @@ public class MainActivity extends ActionBarActivity
                 double latitude = location.getDouble("latitude");
 
                 String eventType = currentNewsItem.getString("type");
-                JSONObject attackerIdentity = currentNewsItem.getJSONObject("attackerIdentity");
+                JSONObject attackerIdentity = identities.getJSONObject(currentNewsItem.getInt("attacker"));
                 String attackerGeneratedName = attackerIdentity.getString("generatedName");
                 String eventColor = attackerIdentity.getString("colorAsHexString");
 
@@ -18,4 +18,132 @@ public class Config {
 	public static final String	ENDPOINT_PATH_REQUEST_ID		= "/request_id";
 	public static final String	ENDPOINT_PATH_RESET				= "/reset";
 	public static final String	ENDPOINT_PATH_DEMO				= "/demo";
+	public static final String	ENDPOINT_PATH_BATCH				= "/batch";
+
+	// Each consumer of /intel (Node-RED, the Twitter feed, spectator screens...) names itself with ?consumer=<name>
+	// and gets every bit of activity intel, read from its own cursor. Requests which don't name one share a cursor.
+	// Only the consumers set at startup with -Dliberty_paintball.intel_consumers=<name>,<name>,... (the Twitter
+	// feed's by default) have cursors, and requests naming any other are rejected with a 404.
+	public static final String	QUERY_PARAM_CONSUMER			= "consumer";
+	public static final String	DEFAULT_INTEL_CONSUMER			= "default";
+	public static final String	INTEL_CONSUMERS_PROPERTY		= "liberty_paintball.intel_consumers";
+	public static final String	DEFAULT_INTEL_CONSUMERS			= "twitter";
+
+	// Asynchronous variants of the busiest endpoints, which free the container's thread while the game applies
+	// the request. They need the jaxrs-2.0 feature and are most useful with the single_writer engine.
+	public static final String	ENDPOINT_PATH_ASYNC				= "/async";
+	public static final String	ENDPOINT_PATH_ASYNC_JOIN		= ENDPOINT_PATH_ASYNC + ENDPOINT_PATH_JOIN;
+	public static final String	ENDPOINT_PATH_ASYNC_ATTACK		= ENDPOINT_PATH_ASYNC + ENDPOINT_PATH_ATTACK;
+	public static final String	ENDPOINT_PATH_ASYNC_UPDATE		= ENDPOINT_PATH_ASYNC + ENDPOINT_PATH_UPDATE_LOCATION;
+	public static final String	ENDPOINT_PATH_ASYNC_INTEL		= ENDPOINT_PATH_ASYNC + ENDPOINT_PATH_INTEL;
+
+	// Endpoints act on the default arena unless the request names another with ?arena=<id>. The arenas
+	// a server hosts are set at startup with -Dliberty_paintball.arenas=<id>,<id>,...
+	public static final String	QUERY_PARAM_ARENA				= "arena";
+	public static final String	DEFAULT_ARENA					= "default";
+	public static final String	ARENAS_PROPERTY					= "liberty_paintball.arenas";
+
+	// The map endpoints return only what's been added since the cursor from a previous response when passed
+	// ?since=<cursor>, along with the next cursor. Without it they return the whole map as before.
+	public static final String	QUERY_PARAM_SINCE				= "since";
+
+	// The map endpoints return the map in a compact binary form (see MapBinaryWriter) rather than JSON when the
+	// request's Accept header names this media type. A wildcard Accept header still gets JSON.
+	public static final String	MEDIA_TYPE_MAP_BINARY			= "application/x-liberty-map";
+	public static final String	HEADER_ACCEPT					= "Accept";
+
+	// With ?identities=dictionary the map endpoints send each player identity once, in a dictionary which the
+	// map points refer to by index, rather than repeating it in every map point (see MapJsonWriter).
+	public static final String	QUERY_PARAM_IDENTITIES			= "identities";
+	public static final String	IDENTITIES_DICTIONARY			= "dictionary";
+
+	// The map endpoints tag the map with an ETag from the game's version of it, and answer a request whose
+	// If-None-Match header has the current tag with a 304 and no body. Maps over a threshold are gzipped for
+	// clients which accept it, with the whole map's compressed body kept until the map changes.
+	public static final String	HEADER_IF_NONE_MATCH			= "If-None-Match";
+	public static final String	HEADER_ACCEPT_ENCODING			= "Accept-Encoding";
+	public static final String	HEADER_CONTENT_ENCODING			= "Content-Encoding";
+	public static final String	HEADER_VARY						= "Vary";
+
+	// Events older than -Dliberty_paintball.timeline.retention_minutes=<minutes> (60 by default, and never less
+	// than the delayed map's delay) or beyond the newest -Dliberty_paintball.timeline.max_events=<count> (100000
+	// by default) are dropped from the timeline and counted in a rollup instead, served by ?rollup=true.
+	public static final String	QUERY_PARAM_ROLLUP				= "rollup";
+	public static final String	TIMELINE_RETENTION_MINUTES_PROPERTY	= "liberty_paintball.timeline.retention_minutes";
+	public static final String	TIMELINE_MAX_EVENTS_PROPERTY	= "liberty_paintball.timeline.max_events";
+
+	// The events still kept in the timeline can be queried by attacker and participant username, event type,
+	// time range (millis since the epoch, inclusive) and bounding box (all four sides), e.g.
+	// /timeline?attacker=<username>&type=PLAYER_HIT&from=<millis>. At most ?limit=<count> (1000 by default) of
+	// the latest matching events are returned.
+	public static final String	ENDPOINT_PATH_TIMELINE			= "/timeline";
+	public static final String	QUERY_PARAM_ATTACKER			= "attacker";
+	public static final String	QUERY_PARAM_PARTICIPANT			= "participant";
+	public static final String	QUERY_PARAM_TYPE				= "type";
+	public static final String	QUERY_PARAM_FROM				= "from";
+	public static final String	QUERY_PARAM_TO					= "to";
+	public static final String	QUERY_PARAM_MIN_LATITUDE		= "min_lat";
+	public static final String	QUERY_PARAM_MIN_LONGITUDE		= "min_lon";
+	public static final String	QUERY_PARAM_MAX_LATITUDE		= "max_lat";
+	public static final String	QUERY_PARAM_MAX_LONGITUDE		= "max_lon";
+	public static final String	QUERY_PARAM_LIMIT				= "limit";
+
+	// Heatmaps of the events are served a tile at a time, numbered like web map tiles, from
+	// /heatmap?zoom=<zoom>&x=<x>&y=<y> at zoom levels 12, 14, 16 and 18. Adding &minutes=<minutes> counts only
+	// the events in the last so many minutes (in 5 minute steps, up to an hour) rather than the whole game.
+	public static final String	ENDPOINT_PATH_HEATMAP			= "/heatmap";
+	public static final String	QUERY_PARAM_ZOOM				= "zoom";
+	public static final String	QUERY_PARAM_X					= "x";
+	public static final String	QUERY_PARAM_Y					= "y";
+	public static final String	QUERY_PARAM_MINUTES				= "minutes";
+
+	// Everything which changes a game is journaled to disk when -Dliberty_paintball.journal.dir=<directory> is set,
+	// with a subdirectory per arena, and the journal is replayed at startup to carry on where the game left off.
+	// The journal is forced to disk every -Dliberty_paintball.journal.fsync_millis=<millis> (100 by default), or
+	// after every record if it's 0. A checkpoint of the whole game is written every
+	// -Dliberty_paintball.journal.checkpoint_millis=<millis> (60000 by default) so only the journal since then
+	// has to be replayed.
+	public static final String	JOURNAL_DIR_PROPERTY			= "liberty_paintball.journal.dir";
+	public static final String	JOURNAL_FSYNC_MILLIS_PROPERTY	= "liberty_paintball.journal.fsync_millis";
+	public static final String	JOURNAL_CHECKPOINT_MILLIS_PROPERTY	= "liberty_paintball.journal.checkpoint_millis";
+
+	// A game can be split over several servers, each owning a band of longitude. Every server is started with
+	// the same list of node URLs (the base URL of each server's API) and the longitudes between neighbouring
+	// bands, plus its own position in the list. The first node assigns identities to players who join.
+	// o -Dliberty_paintball.cluster.nodes=http://127.0.0.1:9080/LibertyPaintball/liberty_paintball_api,...
+	// o -Dliberty_paintball.cluster.boundaries=-1.3975,...  (one fewer than the number of nodes)
+	// o -Dliberty_paintball.cluster.node_index=0
+	// o -Dliberty_paintball.cluster.secret=<shared secret>
+	// The servers send the secret with every request to each other and the cluster endpoint rejects requests
+	// without it, so the cluster stays disabled until a secret is set.
+	public static final String	CLUSTER_NODES_PROPERTY			= "liberty_paintball.cluster.nodes";
+	public static final String	CLUSTER_BOUNDARIES_PROPERTY		= "liberty_paintball.cluster.boundaries";
+	public static final String	CLUSTER_NODE_INDEX_PROPERTY		= "liberty_paintball.cluster.node_index";
+	public static final String	CLUSTER_SECRET_PROPERTY			= "liberty_paintball.cluster.secret";
+	public static final String	HEADER_CLUSTER_SECRET			= "X-Cluster-Secret";
+	public static final String	ENDPOINT_PATH_CLUSTER			= "/cluster";
+
+	// How the game applies requests, chosen at startup with -Dliberty_paintball.engine=<mode> in jvm.options:
+	// o locked........Requests are applied on the threads they arrive on, ordered by region locks (default).
+	// o single_writer.Requests are queued and applied in order by a single game thread.
+	// o tick..........Attacks and location updates are collected and resolved together every tick, which is
+	//                 -Dliberty_paintball.tick_millis=<millis> long (50 by default). Other requests are locked.
+	public static final String	ENGINE_PROPERTY					= "liberty_paintball.engine";
+	public static final String	ENGINE_LOCKED					= "locked";
+	public static final String	ENGINE_SINGLE_WRITER			= "single_writer";
+	public static final String	ENGINE_TICK						= "tick";
+	public static final String	TICK_MILLIS_PROPERTY			= "liberty_paintball.tick_millis";
+
+	// How many region locks the locked engine stripes the playing field over, chosen at startup with
+	// -Dliberty_paintball.region_lock_stripes=<count> (rounded up to a power of two). The default of 1 is a
+	// single lock of the whole field. More stripes let attacks in different parts of the field run in
+	// parallel, which is only worth trying on a machine with cores to spare (64 is a good place to start).
+	public static final String	REGION_LOCK_STRIPES_PROPERTY	= "liberty_paintball.region_lock_stripes";
+
+	// How players are indexed for range finding, chosen at startup with -Dliberty_paintball.range_index=<index>:
+	// o grid...Players are bucketed into cells the size of the attack radius (default).
+	// o store..Player locations are kept in primitive arrays which are scanned in a single pass.
+	public static final String	RANGE_INDEX_PROPERTY			= "liberty_paintball.range_index";
+	public static final String	RANGE_INDEX_GRID				= "grid";
+	public static final String	RANGE_INDEX_STORE				= "store";
 }
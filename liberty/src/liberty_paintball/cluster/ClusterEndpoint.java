@@ -0,0 +1,48 @@
+package liberty_paintball.cluster;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_FORM_URLENCODED;
+import static javax.ws.rs.core.Response.Status.FORBIDDEN;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.ENDPOINT_PATH_CLUSTER;
+import static liberty_paintball.Config.HEADER_CLUSTER_SECRET;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+
+/**
+ * @author Dave Waddling
+ *
+ * ClusterEndpoint consumes and returns a form encoded ClusterMessage.
+ *
+ * It's only used by the other servers in a cluster, see ClusterNode. When no cluster is
+ * configured every request is rejected with a 404, and requests without the cluster's shared
+ * secret are rejected with a 403.
+ *
+ */
+@ApplicationPath(APPLICATION_NAME)
+@Path(ENDPOINT_PATH_CLUSTER + "/{operation}")
+public class ClusterEndpoint {
+
+	@POST
+	@Consumes(APPLICATION_FORM_URLENCODED)
+	@Produces(APPLICATION_FORM_URLENCODED)
+	public String handle(@PathParam("operation") String operation, @HeaderParam(HEADER_CLUSTER_SECRET) String secret, String body) {
+		ClusterNode cluster = ClusterNode.getInstance();
+		if (!cluster.isEnabled()) {
+			throw new WebApplicationException(NOT_FOUND);
+		}
+		if (!cluster.isAuthorized(secret)) {
+			System.out.println("WARNING Refusing cluster request '" + operation + "' without the cluster's secret.");
+			throw new WebApplicationException(FORBIDDEN);
+		}
+		return cluster.handle(operation, ClusterMessage.decode(body)).encode();
+	}
+
+}
@@ -0,0 +1,175 @@
+package liberty_paintball.cluster;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import liberty_paintball.game.Location;
+import liberty_paintball.game.PlayerIdentity;
+import liberty_paintball.game.PlayerState;
+import liberty_paintball.json.responses.AttackResponse;
+import liberty_paintball.json.responses.AttackResponse.ResponseType;
+
+/**
+ * @author Dave Waddling
+ *
+ * The body of a request or response passed between the servers in a cluster. It's a flat list of
+ * key/value pairs sent form encoded, which is all the servers need to pass requests, players and
+ * attack responses between each other. Missing keys are read back as null.
+ *
+ */
+public class ClusterMessage {
+
+	private static final String	ENCODING	= "UTF-8";
+
+	private List<String[]>		entries;
+
+
+	public ClusterMessage() {
+		entries = new ArrayList<String[]>();
+	}
+
+
+	public ClusterMessage put(String key, Object value) {
+		if (value != null) {
+			entries.add(new String[] { key, String.valueOf(value) });
+		}
+		return this;
+	}
+
+
+	public String get(String key) {
+		for (String[] entry : entries) {
+			if (entry[0].equals(key)) {
+				return entry[1];
+			}
+		}
+		return null;
+	}
+
+
+	public double getDouble(String key) {
+		return Double.parseDouble(get(key));
+	}
+
+
+	public long getLong(String key) {
+		return Long.parseLong(get(key));
+	}
+
+
+	public int getInt(String key) {
+		return Integer.parseInt(get(key));
+	}
+
+
+	public boolean getBoolean(String key) {
+		return Boolean.parseBoolean(get(key));
+	}
+
+
+	public ClusterMessage putIdentity(String prefix, PlayerIdentity identity) {
+		if (identity != null) {
+			put(prefix + "username", identity.getUsername());
+			put(prefix + "generatedName", identity.getGeneratedName());
+			put(prefix + "color", identity.getColorAsHexString());
+		}
+		return this;
+	}
+
+
+	public PlayerIdentity getIdentity(String prefix) {
+		if (get(prefix + "username") == null) {
+			return null;
+		}
+		return new PlayerIdentity(get(prefix + "username"), get(prefix + "generatedName"), get(prefix + "color"));
+	}
+
+
+	public ClusterMessage putPlayerState(String prefix, PlayerState state) {
+		Location location = state.getLocation();
+		if (location != null) {
+			put(prefix + "latitude", location.getLatitude());
+			put(prefix + "longitude", location.getLongitude());
+			put(prefix + "updated", location.getUpdatedTimeMillis());
+		}
+		put(prefix + "score", state.getScore());
+		put(prefix + "eliminated", state.isEliminated());
+		return this;
+	}
+
+
+	public PlayerState getPlayerState(String prefix) {
+		Location location = null;
+		if (get(prefix + "latitude") != null) {
+			location = new Location(getDouble(prefix + "latitude"), getDouble(prefix + "longitude"));
+			location.setUpdatedTimeMillis(getLong(prefix + "updated"));
+		}
+		return PlayerState.of(location, getInt(prefix + "score"), getBoolean(prefix + "eliminated"));
+	}
+
+
+	public ClusterMessage putAttackResponse(AttackResponse response) {
+		put("responseType", response.getResponseType());
+		putIdentity("attacker.", response.getAttackerIdentity());
+		put("attackerMessage", response.getAttackerMessage());
+		List<PlayerIdentity> participants = response.getParticipantIdentities();
+		put("participantCount", participants.size());
+		for (int i = 0; i < participants.size(); i++) {
+			putIdentity("participant" + i + ".", participants.get(i));
+		}
+		put("participantMessage", response.getParticipantMessage());
+		return this;
+	}
+
+
+	public AttackResponse getAttackResponse() {
+		List<PlayerIdentity> participants = null;
+		int participantCount = getInt("participantCount");
+		if (participantCount > 0) {
+			participants = new ArrayList<PlayerIdentity>(participantCount);
+			for (int i = 0; i < participantCount; i++) {
+				participants.add(getIdentity("participant" + i + "."));
+			}
+		}
+		return new AttackResponse(ResponseType.valueOf(get("responseType")), getIdentity("attacker."), get("attackerMessage"), participants, get("participantMessage"));
+	}
+
+
+	public String encode() {
+		StringBuilder encoded = new StringBuilder();
+		try {
+			for (String[] entry : entries) {
+				if (encoded.length() > 0) {
+					encoded.append('&');
+				}
+				encoded.append(URLEncoder.encode(entry[0], ENCODING)).append('=').append(URLEncoder.encode(entry[1], ENCODING));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return encoded.toString();
+	}
+
+
+	public static ClusterMessage decode(String encoded) {
+		ClusterMessage message = new ClusterMessage();
+		if (encoded == null || encoded.length() == 0) {
+			return message;
+		}
+		try {
+			for (String pair : encoded.split("&")) {
+				int separator = pair.indexOf('=');
+				if (separator > 0) {
+					message.put(URLDecoder.decode(pair.substring(0, separator), ENCODING), URLDecoder.decode(pair.substring(separator + 1), ENCODING));
+				}
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return message;
+	}
+
+}
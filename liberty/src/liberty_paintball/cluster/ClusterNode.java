@@ -0,0 +1,420 @@
+package liberty_paintball.cluster;
+
+import static liberty_paintball.Config.CLUSTER_BOUNDARIES_PROPERTY;
+import static liberty_paintball.Config.CLUSTER_NODES_PROPERTY;
+import static liberty_paintball.Config.CLUSTER_NODE_INDEX_PROPERTY;
+import static liberty_paintball.Config.CLUSTER_SECRET_PROPERTY;
+import static liberty_paintball.Config.ENDPOINT_PATH_CLUSTER;
+import static liberty_paintball.Config.HEADER_CLUSTER_SECRET;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import liberty_paintball.game.Game;
+import liberty_paintball.game.GameRegistry;
+import liberty_paintball.game.Location;
+import liberty_paintball.game.Player;
+import liberty_paintball.game.PlayerGrid;
+import liberty_paintball.game.PlayerIdentity;
+import liberty_paintball.json.requests.AttackRequest;
+import liberty_paintball.json.requests.JoinGameRequest;
+import liberty_paintball.json.requests.LeaveGameRequest;
+import liberty_paintball.json.requests.UpdateLocationRequest;
+import liberty_paintball.json.responses.AttackResponse;
+import liberty_paintball.json.responses.JoinResponse;
+
+/**
+ * @author Dave Waddling
+ *
+ * ClusterNode is a singleton which splits the playing field between several servers. Each server owns a
+ * band of longitude and holds the players whose last known location is in that band:
+ * o Attacks and location updates for a location in another band are forwarded to the server which owns it.
+ * o A server handling a player it doesn't hold pulls them from whichever server does (the hand off).
+ * o Attacks close enough to a band's edge also find the players in range on the neighbouring servers, and
+ *   eliminating them or crediting their score is done by the server holding them.
+ * o Players join through the first server so in-game names stay unique across the cluster.
+ *
+ * Servers talk to each other by posting form encoded ClusterMessages to the ClusterEndpoint, so several
+ * servers on the loopback interface are all that's needed to try it out (see LoopbackCluster). Every request
+ * carries the cluster's shared secret in a header and requests without it are refused, so players can't
+ * eliminate each other or hand themselves over by posting to the endpoint. Without any nodes or a secret
+ * configured the cluster is disabled and the game runs entirely on this server.
+ *
+ * Requests from other servers are handled on the request thread rather than being queued for the game
+ * thread, so two servers attacking across a border at the same time can't end up waiting on each other.
+ *
+ */
+public final class ClusterNode {
+
+	private static final int		CONNECT_TIMEOUT_MILLIS	= 2000;
+
+	private static final int		READ_TIMEOUT_MILLIS		= 5000;
+
+	private static final Charset	UTF_8					= Charset.forName("UTF-8");
+
+	private static ClusterNode		instance				= null;
+
+
+	public static synchronized ClusterNode getInstance() {
+		if (instance == null) {
+			instance = new ClusterNode();
+		}
+		return instance;
+	}
+
+	private final List<String>	nodeUrls;
+	private final double[]		boundaries;
+	private final int			nodeIndex;
+	private final String		secret;
+	private final boolean		isEnabled;
+
+
+	private ClusterNode() {
+		nodeUrls = new ArrayList<String>();
+		for (String nodeUrl : System.getProperty(CLUSTER_NODES_PROPERTY, "").split(",")) {
+			if (nodeUrl.trim().length() > 0) {
+				nodeUrls.add(nodeUrl.trim());
+			}
+		}
+
+		String[] configuredBoundaries = System.getProperty(CLUSTER_BOUNDARIES_PROPERTY, "").split(",");
+		List<Double> parsedBoundaries = new ArrayList<Double>();
+		for (String boundary : configuredBoundaries) {
+			if (boundary.trim().length() > 0) {
+				parsedBoundaries.add(Double.valueOf(boundary.trim()));
+			}
+		}
+		boundaries = new double[parsedBoundaries.size()];
+		for (int i = 0; i < boundaries.length; i++) {
+			boundaries[i] = parsedBoundaries.get(i);
+		}
+		Arrays.sort(boundaries);
+
+		nodeIndex = Integer.parseInt(System.getProperty(CLUSTER_NODE_INDEX_PROPERTY, "0"));
+		secret = System.getProperty(CLUSTER_SECRET_PROPERTY, "");
+
+		if (nodeUrls.size() < 2) {
+			isEnabled = false;
+		} else if (secret.length() == 0) {
+			System.out.println("WARNING Cluster needs a shared secret so other servers' requests can be told apart from players'. Running without a cluster.");
+			isEnabled = false;
+		} else if (boundaries.length != nodeUrls.size() - 1 || nodeIndex < 0 || nodeIndex >= nodeUrls.size()) {
+			System.out.println("WARNING Cluster needs one boundary fewer than nodes and a valid node index. Running without a cluster.");
+			isEnabled = false;
+		} else {
+			isEnabled = true;
+			System.out.println("INFO Running as node " + nodeIndex + " of " + nodeUrls + " with boundaries " + Arrays.toString(boundaries) + ".");
+		}
+	}
+
+
+	public boolean isEnabled() {
+		return isEnabled;
+	}
+
+
+	/**
+	 * Whether a request to the ClusterEndpoint came from another server in the cluster. The secrets are
+	 * compared in constant time so the comparison doesn't give away how much of a guess was right.
+	 */
+	public boolean isAuthorized(String requestSecret) {
+		return isEnabled && requestSecret != null && MessageDigest.isEqual(secret.getBytes(UTF_8), requestSecret.getBytes(UTF_8));
+	}
+
+
+	public boolean isCoordinator() {
+		return nodeIndex == 0;
+	}
+
+
+	public boolean ownsLocation(double longitude) {
+		return ownerOf(longitude) == nodeIndex;
+	}
+
+
+	private int ownerOf(double longitude) {
+		int owner = 0;
+		while (owner < boundaries.length && longitude >= boundaries[owner]) {
+			owner++;
+		}
+		return owner;
+	}
+
+
+	public AttackResponse forwardAttack(String arenaId, AttackRequest request) {
+		int owner = ownerOf(request.getLongitude());
+		System.out.println("INFO Forwarding attack from '" + request.getUsername() + "' to node " + owner + ".");
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", request.getUsername()).put("latitude", request.getLatitude()).put("longitude", request.getLongitude());
+		return call(owner, "attack", message).getAttackResponse();
+	}
+
+
+	public void forwardUpdate(String arenaId, UpdateLocationRequest request) {
+		int owner = ownerOf(request.getLongitude());
+		System.out.println("INFO Forwarding location update from '" + request.getUsername() + "' to node " + owner + ".");
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", request.getUsername()).put("latitude", request.getLatitude()).put("longitude", request.getLongitude());
+		call(owner, "update", message);
+	}
+
+
+	public JoinResponse forwardJoin(String arenaId, JoinGameRequest request) {
+		System.out.println("INFO Forwarding join from '" + request.getUsername() + "' to node 0.");
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", request.getUsername());
+		return new JoinResponse(call(0, "join", message).getIdentity(""));
+	}
+
+
+	public void broadcastLeave(String arenaId, String username) {
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", username);
+		for (int peer : getPeers()) {
+			try {
+				call(peer, "leave", message);
+			} catch (IllegalStateException e) {
+				System.out.println("WARNING Couldn't tell node " + peer + " that '" + username + "' left: " + e.getMessage());
+			}
+		}
+	}
+
+
+	public PlayerIdentity lookupIdentity(String arenaId, String username) {
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", username);
+		for (int peer : getPeers()) {
+			try {
+				PlayerIdentity identity = call(peer, "identity", message).getIdentity("");
+				if (identity != null) {
+					return identity;
+				}
+			} catch (IllegalStateException e) {
+				System.out.println("WARNING Couldn't look up '" + username + "' on node " + peer + ": " + e.getMessage());
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Asks the other servers to hand over the player, returning null if none of them hold the player.
+	 * The server which held them keeps them until the hand over is confirmed with confirmHandover(),
+	 * and gives the same player again if it's asked again before then, so a request whose reply is
+	 * lost can simply be retried.
+	 */
+	public Handover pullPlayer(String arenaId, String username) {
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", username);
+		for (int peer : getPeers()) {
+			try {
+				ClusterMessage response = call(peer, "release", message);
+				PlayerIdentity identity = response.getIdentity("");
+				if (identity != null) {
+					System.out.println("INFO Player '" + username + "' was handed over from node " + peer + ".");
+					return new Handover(peer, new Player(identity, response.getPlayerState("")));
+				}
+			} catch (IllegalStateException e) {
+				System.out.println("WARNING Couldn't ask node " + peer + " to hand over '" + username + "': " + e.getMessage());
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Tells the server which handed the player over that they've been adopted here, so it can let them
+	 * go. If it can't be told it keeps them until the player is handed back.
+	 */
+	public void confirmHandover(String arenaId, Handover handover) {
+		String username = handover.getPlayer().getUsername();
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", username);
+		try {
+			call(handover.node, "released", message);
+		} catch (IllegalStateException e) {
+			System.out.println("WARNING Couldn't confirm the hand over of '" + username + "' to node " + handover.node + ": " + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Finds the players in range of the location who are held by the other servers. Only servers whose
+	 * band is within the radius are asked, so attacks away from the edges stay on this server. A server
+	 * which can't be reached is taken to have no players in range, so attacks near its border still
+	 * land on the players held here.
+	 */
+	public List<Player> findRemotePlayersInRange(String arenaId, Location location, double radiusMeters, String excludedUsername) {
+		double longitude = location.getLongitude();
+		double longitudeSpan = PlayerGrid.longitudeSpanDegrees(location.getLatitude(), radiusMeters);
+		int firstNode = 0;
+		int lastNode = nodeUrls.size() - 1;
+		if (!Double.isNaN(longitudeSpan) && longitude - longitudeSpan >= -180.0d && longitude + longitudeSpan <= 180.0d) {
+			firstNode = ownerOf(longitude - longitudeSpan);
+			lastNode = ownerOf(longitude + longitudeSpan);
+		}
+
+		List<Player> playersInRange = new ArrayList<Player>();
+		for (int node = firstNode; node <= lastNode; node++) {
+			if (node == nodeIndex) {
+				continue;
+			}
+			ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", excludedUsername).put("latitude", location.getLatitude()).put("longitude", longitude);
+			ClusterMessage response;
+			try {
+				response = call(node, "range", message);
+			} catch (IllegalStateException e) {
+				System.out.println("WARNING Couldn't find players in range on node " + node + ", treating it as having none: " + e.getMessage());
+				continue;
+			}
+			int count = response.getInt("count");
+			for (int i = 0; i < count; i++) {
+				String prefix = "player" + i + ".";
+				playersInRange.add(new RemotePlayer(response.getIdentity(prefix), response.getPlayerState(prefix), this, node, arenaId));
+			}
+		}
+		return playersInRange;
+	}
+
+
+	boolean eliminateRemotePlayer(int node, String arenaId, String username) {
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", username);
+		return call(node, "eliminate", message).getBoolean("eliminated");
+	}
+
+
+	void incrementRemoteScore(int node, String arenaId, String username) {
+		ClusterMessage message = new ClusterMessage().put("arena", arenaId).put("username", username);
+		call(node, "score", message);
+	}
+
+
+	/**
+	 * Handles a request from another server in the cluster.
+	 */
+	public ClusterMessage handle(String operation, ClusterMessage message) {
+		Game game = GameRegistry.getInstance().getArena(message.get("arena"));
+		if (game == null) {
+			throw new IllegalArgumentException("No such arena '" + message.get("arena") + "'.");
+		}
+		String username = message.get("username");
+		ClusterMessage response = new ClusterMessage();
+
+		switch (operation) {
+		case "attack":
+			return response.putAttackResponse(game.handleLocalAttackRequest(new AttackRequest(username, message.getDouble("latitude"), message.getDouble("longitude"))));
+		case "update":
+			game.handleLocalUpdateLocationRequest(new UpdateLocationRequest(username, message.getDouble("latitude"), message.getDouble("longitude")));
+			return response;
+		case "join":
+			return response.putIdentity("", game.handleLocalJoinGameRequest(new JoinGameRequest(username)).getPlayerIdentity());
+		case "leave":
+			game.handleLocalLeaveGameRequest(new LeaveGameRequest(username));
+			return response;
+		case "identity":
+			return response.putIdentity("", game.handleLocalIDRequest(new JoinGameRequest(username)).getPlayerIdentity());
+		case "release":
+			Player releasedPlayer = game.releasePlayer(username);
+			if (releasedPlayer != null) {
+				response.putIdentity("", releasedPlayer.getIdentity()).putPlayerState("", releasedPlayer.getState());
+			}
+			return response;
+		case "released":
+			game.confirmRelease(username);
+			return response;
+		case "range":
+			List<Player> playersInRange = game.findLocalPlayersInRange(new Location(message.getDouble("latitude"), message.getDouble("longitude")), username);
+			response.put("count", playersInRange.size());
+			for (int i = 0; i < playersInRange.size(); i++) {
+				response.putIdentity("player" + i + ".", playersInRange.get(i).getIdentity()).putPlayerState("player" + i + ".", playersInRange.get(i).getState());
+			}
+			return response;
+		case "eliminate":
+			return response.put("eliminated", game.eliminateLocalPlayer(username));
+		case "score":
+			game.incrementLocalScore(username);
+			return response;
+		default:
+			throw new IllegalArgumentException("Unknown cluster operation '" + operation + "'.");
+		}
+	}
+
+
+	private List<Integer> getPeers() {
+		List<Integer> peers = new ArrayList<Integer>(nodeUrls.size() - 1);
+		for (int node = 0; node < nodeUrls.size(); node++) {
+			if (node != nodeIndex) {
+				peers.add(node);
+			}
+		}
+		return peers;
+	}
+
+
+	private ClusterMessage call(int node, String operation, ClusterMessage message) {
+		String url = nodeUrls.get(node) + ENDPOINT_PATH_CLUSTER + "/" + operation;
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+			connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			connection.setRequestProperty(HEADER_CLUSTER_SECRET, secret);
+
+			OutputStream output = connection.getOutputStream();
+			try {
+				output.write(message.encode().getBytes(UTF_8));
+			} finally {
+				output.close();
+			}
+
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				throw new IllegalStateException("Node " + node + " returned HTTP " + connection.getResponseCode() + " for " + operation + ".");
+			}
+
+			InputStream input = connection.getInputStream();
+			try {
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = input.read(buffer)) != -1) {
+					body.write(buffer, 0, read);
+				}
+				return ClusterMessage.decode(body.toString("UTF-8"));
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Node " + node + " couldn't be reached for " + operation + ".", e);
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * A player handed over by another server, along with the server to confirm the hand over to.
+	 */
+	public static final class Handover {
+
+		private final int		node;
+		private final Player	player;
+
+
+		private Handover(int node, Player player) {
+			this.node = node;
+			this.player = player;
+		}
+
+
+		public Player getPlayer() {
+			return player;
+		}
+	}
+
+}
@@ -0,0 +1,310 @@
+package liberty_paintball.cluster;
+
+import static liberty_paintball.Config.CLUSTER_BOUNDARIES_PROPERTY;
+import static liberty_paintball.Config.CLUSTER_NODES_PROPERTY;
+import static liberty_paintball.Config.CLUSTER_NODE_INDEX_PROPERTY;
+import static liberty_paintball.Config.CLUSTER_SECRET_PROPERTY;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.ENDPOINT_PATH_CLUSTER;
+import static liberty_paintball.Config.HEADER_CLUSTER_SECRET;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Dave Waddling
+ *
+ * Runs a cluster of two nodes in one JVM on the loopback interface and plays a game across the border
+ * between them, so the split can be checked without setting up several Liberty servers. It isn't used
+ * by the server itself.
+ *
+ * Each node loads the game in a class loader of its own so it has its own singletons, and is served by a
+ * small HTTP server which checks the secret and passes requests to the node the way ClusterEndpoint does.
+ * Run it with the application's classes on the class path:
+ *
+ *   java -cp <classes> liberty_paintball.cluster.LoopbackCluster
+ *
+ * It checks that:
+ * o Players joining through either node get their identity from the coordinator.
+ * o A player whose location moves into the other node's band is handed over to it, and let go by the
+ *   node which held them once the hand over is confirmed.
+ * o An attack near the border eliminates a player held by the other node, and only scores once.
+ * o Asking for a hand over again, as a node whose reply was lost would, gets the same player.
+ * o Requests without the cluster's secret are refused with a 403.
+ * and exits with 1 if any of them fail.
+ *
+ */
+public final class LoopbackCluster {
+
+	private static final String		API_PATH	= "/liberty_paintball_api";
+
+	private static final String		SECRET		= "loopback";
+
+	// Node 0 owns the west of the meridian and node 1 the east.
+	private static final double		BOUNDARY	= 0.0d;
+
+	private static final double		LATITUDE	= 51.5d;
+
+	// About 3.5 metres either side of the border, so the two players are in range of each other.
+	private static final double		WEST		= -0.00005d;
+	private static final double		EAST		= 0.00005d;
+
+	private static final Charset	UTF_8		= Charset.forName("UTF-8");
+
+	private static int				failures	= 0;
+
+
+	private LoopbackCluster() {
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		HttpServer[] servers = new HttpServer[2];
+		StringBuilder nodeUrls = new StringBuilder();
+		for (int i = 0; i < servers.length; i++) {
+			servers[i] = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			servers[i].setExecutor(Executors.newCachedThreadPool());
+			nodeUrls.append(i > 0 ? "," : "").append(nodeUrl(servers[i]));
+		}
+
+		System.setProperty(CLUSTER_NODES_PROPERTY, nodeUrls.toString());
+		System.setProperty(CLUSTER_BOUNDARIES_PROPERTY, String.valueOf(BOUNDARY));
+		System.setProperty(CLUSTER_SECRET_PROPERTY, SECRET);
+		Node[] nodes = new Node[servers.length];
+		for (int i = 0; i < nodes.length; i++) {
+			// The node reads its index when its game is created, so each is created before the next index is set.
+			System.setProperty(CLUSTER_NODE_INDEX_PROPERTY, String.valueOf(i));
+			nodes[i] = new Node(servers[i]);
+		}
+		for (HttpServer server : servers) {
+			server.start();
+		}
+
+		try {
+			Node west = nodes[0];
+			Node east = nodes[1];
+
+			String aliceName = west.join("alice");
+			String bobName = east.join("bob");
+			check(aliceName != null && bobName != null && !aliceName.equals(bobName), "Players joining through either node get unique names (" + aliceName + ", " + bobName + ")");
+			check(west.holds("bob") && !east.holds("bob"), "Players who join through node 1 are held by the coordinator until they move");
+
+			west.updateLocation("alice", LATITUDE, WEST);
+			west.updateLocation("bob", LATITUDE, EAST);
+			check(west.holds("alice") && !west.holds("bob") && east.holds("bob"), "A location update for the other band hands the player over to the node which owns it");
+			check(west.releasedScore("bob") == -1, "The node which handed a player over lets them go once it's confirmed");
+
+			check("HIT".equals(west.attack("alice", LATITUDE, WEST)), "An attack by the border hits a player held by the other node");
+			check("MISS".equals(west.attack("alice", LATITUDE, WEST)), "A player eliminated on the other node can't be hit again");
+			check("INVALID_REQUEST".equals(east.attack("bob", LATITUDE, EAST)), "The player eliminated across the border can't attack");
+			check(west.releasedScore("alice") == 1, "The elimination across the border scored once");
+			check(west.releasedScore("alice") == 1, "A hand over which isn't confirmed gives the same player when asked again");
+
+			check(post(servers[1], "identity", null) == HttpURLConnection.HTTP_FORBIDDEN, "Requests without the secret are refused");
+			check(post(servers[1], "identity", "guess") == HttpURLConnection.HTTP_FORBIDDEN, "Requests with the wrong secret are refused");
+			check(post(servers[1], "identity", SECRET) == HttpURLConnection.HTTP_OK, "Requests with the secret are accepted");
+		} finally {
+			for (HttpServer server : servers) {
+				server.stop(0);
+			}
+		}
+
+		System.out.println(failures == 0 ? "INFO Loopback cluster checks passed." : "WARNING " + failures + " loopback cluster check(s) failed.");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+
+	private static String nodeUrl(HttpServer server) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + API_PATH;
+	}
+
+
+	private static void check(boolean isPassed, String description) {
+		if (isPassed) {
+			System.out.println("INFO Passed: " + description + ".");
+		} else {
+			failures++;
+			System.out.println("WARNING Failed: " + description + ".");
+		}
+	}
+
+
+	private static int post(HttpServer server, String operation, String secret) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(nodeUrl(server) + ENDPOINT_PATH_CLUSTER + "/" + operation).openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			if (secret != null) {
+				connection.setRequestProperty(HEADER_CLUSTER_SECRET, secret);
+			}
+			OutputStream output = connection.getOutputStream();
+			try {
+				output.write(("arena=" + DEFAULT_ARENA + "&username=alice").getBytes(UTF_8));
+			} finally {
+				output.close();
+			}
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+
+	private static String read(InputStream input) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+		}
+		return body.toString("UTF-8");
+	}
+
+	/**
+	 * One node of the cluster, with its own copy of the game's classes. Everything is called through
+	 * reflection as the node's classes aren't the ones this class was loaded with.
+	 */
+	private static final class Node {
+
+		private final ClassLoader	loader;
+		private final Object		game;
+		private final Object		cluster;
+
+
+		private Node(HttpServer server) throws Exception {
+			List<URL> classPath = new ArrayList<URL>();
+			for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+				classPath.add(new File(entry).toURI().toURL());
+			}
+			loader = new URLClassLoader(classPath.toArray(new URL[classPath.size()]), ClassLoader.getSystemClassLoader().getParent());
+
+			Object registry = invokeStatic("liberty_paintball.game.GameRegistry", "getInstance");
+			game = invoke(registry, "getDefaultArena");
+			cluster = invokeStatic("liberty_paintball.cluster.ClusterNode", "getInstance");
+			server.createContext(API_PATH + ENDPOINT_PATH_CLUSTER + "/", new HttpHandler() {
+				@Override
+				public void handle(HttpExchange exchange) throws IOException {
+					respond(exchange);
+				}
+			});
+		}
+
+
+		private void respond(HttpExchange exchange) throws IOException {
+			String path = exchange.getRequestURI().getPath();
+			String operation = path.substring(path.lastIndexOf('/') + 1);
+			String secret = exchange.getRequestHeaders().getFirst(HEADER_CLUSTER_SECRET);
+			String body = read(exchange.getRequestBody());
+
+			int status = HttpURLConnection.HTTP_OK;
+			String response = "";
+			try {
+				if (!(Boolean) invoke(cluster, "isAuthorized", secret)) {
+					status = HttpURLConnection.HTTP_FORBIDDEN;
+				} else {
+					Object message = invokeStatic("liberty_paintball.cluster.ClusterMessage", "decode", body);
+					response = (String) invoke(invoke(cluster, "handle", operation, message), "encode");
+				}
+			} catch (Exception e) {
+				System.out.println("WARNING Cluster request '" + operation + "' failed: " + e);
+				status = HttpURLConnection.HTTP_INTERNAL_ERROR;
+			}
+
+			byte[] bytes = response.getBytes(UTF_8);
+			exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+			OutputStream output = exchange.getResponseBody();
+			try {
+				output.write(bytes);
+			} finally {
+				output.close();
+			}
+		}
+
+
+		private String join(String username) throws Exception {
+			Object response = invoke(game, "handleJoinGameRequest", newRequest("JoinGameRequest", username));
+			Object identity = invoke(response, "getPlayerIdentity");
+			return identity != null ? (String) invoke(identity, "getGeneratedName") : null;
+		}
+
+
+		private boolean holds(String username) throws Exception {
+			Object response = invoke(game, "handleLocalIDRequest", newRequest("JoinGameRequest", username));
+			return invoke(response, "getPlayerIdentity") != null;
+		}
+
+
+		private void updateLocation(String username, double latitude, double longitude) throws Exception {
+			invoke(game, "handleUpdateLocationRequest", newRequest("UpdateLocationRequest", username, latitude, longitude));
+		}
+
+
+		private String attack(String username, double latitude, double longitude) throws Exception {
+			Object response = invoke(game, "handleAttackRequest", newRequest("AttackRequest", username, latitude, longitude));
+			return String.valueOf(invoke(response, "getResponseType"));
+		}
+
+
+		/**
+		 * Hands the player over as another node would to read their score, so it's only used at the end.
+		 */
+		private int releasedScore(String username) throws Exception {
+			Object player = invoke(game, "releasePlayer", username);
+			return player != null ? (Integer) invoke(player, "getScore") : -1;
+		}
+
+
+		private Object newRequest(String className, Object... args) throws Exception {
+			Class<?> requestClass = loader.loadClass("liberty_paintball.json.requests." + className);
+			for (Constructor<?> constructor : requestClass.getConstructors()) {
+				if (constructor.getParameterTypes().length == args.length) {
+					return constructor.newInstance(args);
+				}
+			}
+			throw new NoSuchMethodException(className + " has no constructor taking " + args.length + " arguments.");
+		}
+
+
+		private Object invokeStatic(String className, String methodName, Object... args) throws Exception {
+			return invoke(loader.loadClass(className), null, methodName, args);
+		}
+
+
+		private static Object invoke(Object target, String methodName, Object... args) throws Exception {
+			return invoke(target.getClass(), target, methodName, args);
+		}
+
+
+		private static Object invoke(Class<?> targetClass, Object target, String methodName, Object... args) throws Exception {
+			for (Method method : targetClass.getMethods()) {
+				if (method.getName().equals(methodName) && method.getParameterTypes().length == args.length) {
+					try {
+						return method.invoke(target, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					}
+				}
+			}
+			throw new NoSuchMethodException(targetClass.getName() + "." + methodName);
+		}
+	}
+
+}
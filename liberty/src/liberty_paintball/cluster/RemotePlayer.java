@@ -0,0 +1,43 @@
+package liberty_paintball.cluster;
+
+import liberty_paintball.game.Player;
+import liberty_paintball.game.PlayerIdentity;
+import liberty_paintball.game.PlayerState;
+
+/**
+ * @author Dave Waddling
+ *
+ * A player who was found in range of an attack but is held by another server in the cluster. It's
+ * a snapshot of the player taken when the range was checked, and eliminating them or changing their
+ * score is passed on to the server which holds them.
+ *
+ */
+public class RemotePlayer extends Player {
+
+	private final ClusterNode	cluster;
+	private final int			nodeIndex;
+	private final String		arenaId;
+
+
+	public RemotePlayer(PlayerIdentity identity, PlayerState state, ClusterNode cluster, int nodeIndex, String arenaId) {
+		super(identity, state);
+		this.cluster = cluster;
+		this.nodeIndex = nodeIndex;
+		this.arenaId = arenaId;
+	}
+
+
+	@Override
+	public boolean eliminate() {
+		// The server holding the player decides whether they've already been eliminated.
+		return cluster.eliminateRemotePlayer(nodeIndex, arenaId, getUsername()) && super.eliminate();
+	}
+
+
+	@Override
+	public void incrementScore() {
+		cluster.incrementRemoteScore(nodeIndex, arenaId, getUsername());
+		super.incrementScore();
+	}
+
+}
@@ -0,0 +1,42 @@
+package liberty_paintball.endpoints;
+
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+
+import javax.ws.rs.WebApplicationException;
+
+import liberty_paintball.game.Game;
+import liberty_paintball.game.GameRegistry;
+
+/**
+ * @author Dave Waddling
+ * 
+ * Looks up the game for the arena named in a request. Requests for an arena which this server
+ * doesn't host, or for intel for a consumer which isn't configured, are rejected with a 404.
+ *
+ */
+final class Arenas {
+
+	private Arenas() {
+	}
+
+
+	static Game lookup(String arenaId) {
+		Game game = GameRegistry.getInstance().getArena(arenaId);
+		if (game == null) {
+			System.out.println("WARNING Request for unknown arena '" + arenaId + "'. Returning not found.");
+			throw new WebApplicationException(NOT_FOUND);
+		}
+		return game;
+	}
+
+
+	static Game lookupForIntel(String arenaId, String consumer) {
+		Game game = lookup(arenaId);
+		if (!game.isIntelConsumer(consumer)) {
+			System.out.println("WARNING Intel request for unknown consumer '" + consumer + "'. Returning not found.");
+			throw new WebApplicationException(NOT_FOUND);
+		}
+		return game;
+	}
+
+}
@@ -0,0 +1,39 @@
+package liberty_paintball.endpoints;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.DEFAULT_INTEL_CONSUMER;
+import static liberty_paintball.Config.ENDPOINT_PATH_ASYNC_INTEL;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
+import static liberty_paintball.Config.QUERY_PARAM_CONSUMER;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+
+import liberty_paintball.json.responses.IntelResponse;
+
+/**
+ * @author Dave Waddling
+ *
+ * AsyncIntelEndpoint consumes nothing and returns an IntelResponse object, the next bit of intel
+ * for the consumer named in the request, through the asynchronous API like the other Async endpoints.
+ * 
+ */
+@ApplicationPath(APPLICATION_NAME)
+@Path(ENDPOINT_PATH_ASYNC_INTEL)
+public class AsyncIntelEndpoint {
+
+	@GET
+	@Produces(APPLICATION_JSON)
+	public void intel(@QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena, @QueryParam(QUERY_PARAM_CONSUMER) @DefaultValue(DEFAULT_INTEL_CONSUMER) String consumer, @Suspended AsyncResponse asyncResponse) {
+		Arenas.lookupForIntel(arena, consumer).handleIntelRequestAsync(consumer, new AsyncResponseCallback<IntelResponse>(asyncResponse));
+	}
+
+}
@@ -0,0 +1,40 @@
+package liberty_paintball.endpoints;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.ENDPOINT_PATH_ASYNC_JOIN;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+
+import liberty_paintball.json.requests.JoinGameRequest;
+import liberty_paintball.json.responses.JoinResponse;
+
+/**
+ * @author Dave Waddling
+ *
+ * AsyncJoinEndpoint consumes a JoinGameRequest object and returns a JoinResponse object once the
+ * game has added the player, without holding a container thread in the meantime.
+ *
+ */
+@ApplicationPath(APPLICATION_NAME)
+@Path(ENDPOINT_PATH_ASYNC_JOIN)
+public class AsyncJoinEndpoint {
+
+	@POST
+	@Consumes(APPLICATION_JSON)
+	@Produces(APPLICATION_JSON)
+	public void join(JoinGameRequest request, @QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena, @Suspended AsyncResponse asyncResponse) {
+		Arenas.lookup(arena).handleJoinGameRequestAsync(request, new AsyncResponseCallback<JoinResponse>(asyncResponse));
+	}
+
+}
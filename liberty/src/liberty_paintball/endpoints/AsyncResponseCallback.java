@@ -0,0 +1,35 @@
+package liberty_paintball.endpoints;
+
+import javax.ws.rs.container.AsyncResponse;
+
+import liberty_paintball.game.GameCallback;
+
+/**
+ * @author Dave Waddling
+ * 
+ * Resumes a suspended request with the result of the game action once the game has applied it.
+ *
+ */
+class AsyncResponseCallback<T> implements GameCallback<T> {
+
+	private final AsyncResponse	asyncResponse;
+
+
+	AsyncResponseCallback(AsyncResponse asyncResponse) {
+		this.asyncResponse = asyncResponse;
+	}
+
+
+	@Override
+	public void completed(T result) {
+		asyncResponse.resume(result);
+	}
+
+
+	@Override
+	public void failed(Throwable failure) {
+		System.out.println("WARNING Asynchronous game action failed: " + failure);
+		asyncResponse.resume(failure);
+	}
+
+}
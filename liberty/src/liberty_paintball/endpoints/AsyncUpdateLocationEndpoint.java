@@ -0,0 +1,37 @@
+package liberty_paintball.endpoints;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.ENDPOINT_PATH_ASYNC_UPDATE;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+
+import liberty_paintball.json.requests.UpdateLocationRequest;
+
+/**
+ * @author Dave Waddling
+ *
+ * AsyncUpdateLocationEndpoint consumes an UpdateLocationRequest object and returns nothing once the
+ * game has applied the update, without holding a container thread in the meantime.
+ *
+ */
+@ApplicationPath(APPLICATION_NAME)
+@Path(ENDPOINT_PATH_ASYNC_UPDATE)
+public class AsyncUpdateLocationEndpoint {
+
+	@POST
+	@Consumes(APPLICATION_JSON)
+	public void updateLocation(UpdateLocationRequest request, @QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena, @Suspended AsyncResponse asyncResponse) {
+		Arenas.lookup(arena).handleUpdateLocationRequestAsync(request, new AsyncResponseCallback<Void>(asyncResponse));
+	}
+
+}
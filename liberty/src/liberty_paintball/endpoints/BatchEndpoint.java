@@ -0,0 +1,46 @@
+package liberty_paintball.endpoints;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.ENDPOINT_PATH_BATCH;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
+
+import java.util.List;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+
+import liberty_paintball.json.requests.BatchItem;
+import liberty_paintball.json.responses.BatchItemResponse;
+
+/**
+ * @author Dave Waddling
+ *
+ * BatchEndpoint consumes a list of BatchItem objects and returns a list of BatchItemResponse objects
+ * in the same order. A missing list, or a missing item in it, is a bad request.
+ *
+ */
+@ApplicationPath(APPLICATION_NAME)
+@Path(ENDPOINT_PATH_BATCH)
+public class BatchEndpoint {
+
+	@POST
+	@Consumes(APPLICATION_JSON)
+	@Produces(APPLICATION_JSON)
+	public List<BatchItemResponse> batch(List<BatchItem> items, @QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena) {
+		if (items == null || items.contains(null)) {
+			System.out.println("WARNING Batch request is missing its list of actions or an action in it. Returning bad request.");
+			throw new WebApplicationException(BAD_REQUEST);
+		}
+		return Arenas.lookup(arena).handleBatchRequest(items);
+	}
+
+}
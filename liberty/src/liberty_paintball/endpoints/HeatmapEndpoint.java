@@ -0,0 +1,53 @@
+package liberty_paintball.endpoints;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.ENDPOINT_PATH_HEATMAP;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
+import static liberty_paintball.Config.QUERY_PARAM_MINUTES;
+import static liberty_paintball.Config.QUERY_PARAM_X;
+import static liberty_paintball.Config.QUERY_PARAM_Y;
+import static liberty_paintball.Config.QUERY_PARAM_ZOOM;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Application;
+
+import liberty_paintball.mapping.HeatmapTile;
+
+/**
+ * @author Dave Waddling
+ * 
+ * HeatmapEndpoint consumes nothing and returns a HeatmapTile of the counts of each type of event in
+ * one map tile, so a screen only fetches the tiles it shows however long the game has gone on.
+ * 
+ * Like the OmniscienceEndpoint it's an admin/spectator view, so the events aren't delayed.
+ *
+ */
+@ApplicationPath(APPLICATION_NAME)
+@Path(ENDPOINT_PATH_HEATMAP)
+public class HeatmapEndpoint extends Application {
+
+	@GET
+	@Produces(APPLICATION_JSON)
+	public HeatmapTile getTile(@QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena, @QueryParam(QUERY_PARAM_ZOOM) int zoom, @QueryParam(QUERY_PARAM_X) int x, @QueryParam(QUERY_PARAM_Y) int y, @QueryParam(QUERY_PARAM_MINUTES) @DefaultValue("0") int minutes) {
+		if (x < 0 || y < 0 || minutes < 0) {
+			System.out.println("WARNING Heatmap request for tile " + zoom + "/" + x + "/" + y + " over " + minutes + " minutes. Returning bad request.");
+			throw new WebApplicationException(BAD_REQUEST);
+		}
+		HeatmapTile tile = Arenas.lookup(arena).getHeatmapTile(zoom, x, y, minutes);
+		if (tile == null) {
+			System.out.println("WARNING Heatmap request for unsupported zoom level " + zoom + ". Returning not found.");
+			throw new WebApplicationException(NOT_FOUND);
+		}
+		return tile;
+	}
+}
@@ -2,20 +2,26 @@ package liberty_paintball.endpoints;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.DEFAULT_INTEL_CONSUMER;
 import static liberty_paintball.Config.ENDPOINT_PATH_INTEL;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
+import static liberty_paintball.Config.QUERY_PARAM_CONSUMER;
 
 import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 
-import liberty_paintball.game.Game;
 import liberty_paintball.json.responses.IntelResponse;
 
 /**
  * @author Dave Waddling
  *
- * IntelEndpoint consumes nothing and returns an IntelRespones object.
+ * IntelEndpoint consumes nothing and returns an IntelRespones object, the next bit of intel for the
+ * consumer named in the request.
  * 
  */
 @ApplicationPath(APPLICATION_NAME)
@@ -24,8 +30,8 @@ public class IntelEndpoint {
 
 	@GET
 	@Produces(APPLICATION_JSON)
-	public IntelResponse attack() {
-		 return Game.getInstance().handleIntelRequest();
+	public IntelResponse attack(@QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena, @QueryParam(QUERY_PARAM_CONSUMER) @DefaultValue(DEFAULT_INTEL_CONSUMER) String consumer) {
+		 return Arenas.lookupForIntel(arena, consumer).handleIntelRequest(consumer);
 	}
 
 }
@@ -2,15 +2,18 @@ package liberty_paintball.endpoints;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
 import static liberty_paintball.Config.ENDPOINT_PATH_JOIN;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
 
 import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 
-import liberty_paintball.game.Game;
 import liberty_paintball.json.requests.JoinGameRequest;
 import liberty_paintball.json.responses.JoinResponse;
 
@@ -27,8 +30,8 @@ public class JoinEndpoint {
 	@POST
 	@Consumes(APPLICATION_JSON)
 	@Produces(APPLICATION_JSON)
-	public JoinResponse join(JoinGameRequest request) {
-		return Game.getInstance().handleJoinGameRequest(request);
+	public JoinResponse join(JoinGameRequest request, @QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena) {
+		return Arenas.lookup(arena).handleJoinGameRequest(request);
 	}
 
 }
@@ -2,15 +2,18 @@ package liberty_paintball.endpoints;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
 import static liberty_paintball.Config.ENDPOINT_PATH_LEAVE;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
 
 import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
-import liberty_paintball.game.Game;
 import liberty_paintball.json.requests.LeaveGameRequest;
 
 /**
@@ -25,8 +28,8 @@ public class LeaveEndpoint {
 
 	@POST
 	@Consumes(APPLICATION_JSON)
-	public void leave(LeaveGameRequest request) {
-		Game.getInstance().handleLeaveGameRequest(request);
+	public void leave(LeaveGameRequest request, @QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena) {
+		Arenas.lookup(arena).handleLeaveGameRequest(request);
 		Response.ok().build();
 	}
 
@@ -2,23 +2,38 @@ package liberty_paintball.endpoints;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
 import static liberty_paintball.Config.ENDPOINT_PATH_MAP;
-
-import java.util.List;
+import static liberty_paintball.Config.HEADER_ACCEPT;
+import static liberty_paintball.Config.HEADER_ACCEPT_ENCODING;
+import static liberty_paintball.Config.HEADER_IF_NONE_MATCH;
+import static liberty_paintball.Config.IDENTITIES_DICTIONARY;
+import static liberty_paintball.Config.MEDIA_TYPE_MAP_BINARY;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
+import static liberty_paintball.Config.QUERY_PARAM_IDENTITIES;
+import static liberty_paintball.Config.QUERY_PARAM_ROLLUP;
+import static liberty_paintball.Config.QUERY_PARAM_SINCE;
 
 import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Application;
+import javax.ws.rs.core.Response;
 
 import liberty_paintball.game.Game;
-import liberty_paintball.mapping.MapPoint;
 
 /**
  * @author Dave Waddling
  * 
- * MapEndpoint consumes nothing and returns a list of MapPoint objects.
+ * MapEndpoint consumes nothing and returns a list of MapPoint objects, or a MapDelta of the
+ * MapPoint objects added since the cursor when passed one, or a MapRollup of the events too old
+ * to keep when asked for the rollup. The map data is streamed rather than built up in a list first;
+ * see MapResponses for the other forms it can be sent in and how polls for an unchanged map are
+ * answered.
  *
  * This endpoint will return a map of game events but will purposely omit the latest events 
  * so that players cannot exploit it. The delay is configured in Timeline.java.
@@ -29,8 +44,12 @@ import liberty_paintball.mapping.MapPoint;
 public class MapEndpoint extends Application {
 
 	@GET
-	@Produces(APPLICATION_JSON)
-	public List<MapPoint> getMap() {
-		return Game.getInstance().getMapData(false);
+	@Produces({ APPLICATION_JSON, MEDIA_TYPE_MAP_BINARY })
+	public Response getMap(@QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena, @QueryParam(QUERY_PARAM_SINCE) Long since, @QueryParam(QUERY_PARAM_ROLLUP) @DefaultValue("false") boolean rollup, @QueryParam(QUERY_PARAM_IDENTITIES) String identities, @HeaderParam(HEADER_ACCEPT) String accept, @HeaderParam(HEADER_IF_NONE_MATCH) String ifNoneMatch, @HeaderParam(HEADER_ACCEPT_ENCODING) String acceptEncoding) {
+		Game game = Arenas.lookup(arena);
+		if (rollup) {
+			return Response.ok(game.getMapRollup(), APPLICATION_JSON).build();
+		}
+		return MapResponses.mapData(game, false, since, IDENTITIES_DICTIONARY.equals(identities), accept, ifNoneMatch, acceptEncoding);
 	}
 }
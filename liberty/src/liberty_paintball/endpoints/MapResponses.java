@@ -0,0 +1,267 @@
+package liberty_paintball.endpoints;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static liberty_paintball.Config.HEADER_ACCEPT;
+import static liberty_paintball.Config.HEADER_ACCEPT_ENCODING;
+import static liberty_paintball.Config.HEADER_CONTENT_ENCODING;
+import static liberty_paintball.Config.HEADER_VARY;
+import static liberty_paintball.Config.MEDIA_TYPE_MAP_BINARY;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import liberty_paintball.game.Game;
+
+/**
+ * @author Dave Waddling
+ * 
+ * Builds the responses for the map endpoints, streaming the map as JSON, JSON with an identity
+ * dictionary when asked for, or the compact binary form when the request's Accept header names it.
+ *
+ * Each response is tagged with the game's version of the map, and a request which already has that
+ * version gets a 304 without the map being looked at. Maps are gzipped as they're streamed for
+ * clients which accept it, and the compressed whole delayed map is kept for each arena and form until
+ * its version changes, so clients polling a quiet game share one compressed copy. The omniscient map
+ * changes with every location update and deltas depend on each client's cursor, so neither is kept.
+ *
+ * Small bodies, which are most deltas, aren't worth the gzip header and deflater they'd cost, so they
+ * go out as they are. A streamed body's size isn't known until it's written, so those are judged by
+ * how many map points they'll have, and the kept delayed map by its size once it's written out.
+ *
+ */
+final class MapResponses {
+
+	private static final String									GZIP							= "gzip";
+
+	// Bodies smaller than these are sent uncompressed. A map point is about 150 bytes of JSON.
+	private static final int									COMPRESSION_THRESHOLD			= 1024;
+	private static final int									COMPRESSION_THRESHOLD_POINTS	= 8;
+
+	// The response depends on both the format and the encoding asked for.
+	private static final String									VARY							= HEADER_ACCEPT + ", " + HEADER_ACCEPT_ENCODING;
+
+	private static final ConcurrentMap<String, CompressedMap>	compressedMaps					= new ConcurrentHashMap<String, CompressedMap>();
+	private static final ConcurrentMap<String, Object>			fillLocks						= new ConcurrentHashMap<String, Object>();
+
+
+	private MapResponses() {
+	}
+
+
+	static Response mapData(final Game game, final boolean isOmniscient, final Long since, final boolean isDictionary, String accept, String ifNoneMatch, String acceptEncoding) {
+		final boolean isBinary = acceptsBinary(accept);
+		String mediaType = isBinary ? MEDIA_TYPE_MAP_BINARY : APPLICATION_JSON;
+		String form = isBinary ? "b" : isDictionary ? "d" : "j";
+
+		// The version is read before the map so the map is never older than its tag.
+		EntityTag tag = new EntityTag(game.getMapVersion(isOmniscient) + "." + form, true);
+		if (matches(ifNoneMatch, tag)) {
+			return Response.notModified(tag).header(HEADER_VARY, VARY).build();
+		}
+
+		final StreamingOutput mapData = new StreamingOutput() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				if (isBinary) {
+					game.writeBinaryMapData(isOmniscient, since, out);
+				} else if (isDictionary) {
+					game.writeDictionaryMapData(isOmniscient, since, out);
+				} else {
+					game.writeMapData(isOmniscient, since, out);
+				}
+			}
+		};
+		if (!acceptsGzip(acceptEncoding)) {
+			return Response.ok(mapData, mediaType).tag(tag).header(HEADER_VARY, VARY).build();
+		}
+
+		CompressedMap compressedMap = null;
+		if (!isOmniscient && since == null) {
+			compressedMap = compressedMap(game, form, tag.getValue(), mapData);
+		}
+		if (compressedMap != null) {
+			Response.ResponseBuilder response = Response.ok(compressedMap.body, mediaType).tag(tag).header(HEADER_VARY, VARY);
+			if (compressedMap.isGzipped) {
+				response.header(HEADER_CONTENT_ENCODING, GZIP);
+			}
+			return response.build();
+		}
+
+		if (game.getMapPointCount(isOmniscient, since) < COMPRESSION_THRESHOLD_POINTS) {
+			return Response.ok(mapData, mediaType).tag(tag).header(HEADER_VARY, VARY).build();
+		}
+		StreamingOutput gzippedMapData = new StreamingOutput() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				GZIPOutputStream gzip = new GZIPOutputStream(out);
+				mapData.write(gzip);
+				gzip.finish();
+			}
+		};
+		return Response.ok(gzippedMapData, mediaType).tag(tag).header(HEADER_VARY, VARY).header(HEADER_CONTENT_ENCODING, GZIP).build();
+	}
+
+
+	/**
+	 * Returns the compressed delayed map for the tag, compressing it if it isn't kept already, or
+	 * null when the map has moved on since the tag was read so it's streamed instead.
+	 *
+	 * Only one request compresses each arena's map at a time, and the others wait for it rather than
+	 * all compressing the same map. A copy is only kept while its tag is still the game's current one,
+	 * so a request which was held up can't replace a newer copy with an older one.
+	 */
+	private static CompressedMap compressedMap(Game game, String form, String tag, StreamingOutput mapData) {
+		String key = game.getArenaId() + "/" + form;
+		CompressedMap cached = compressedMaps.get(key);
+		if (cached != null && cached.tag.equals(tag)) {
+			return cached;
+		}
+
+		synchronized (fillLockFor(key)) {
+			cached = compressedMaps.get(key);
+			if (cached != null && cached.tag.equals(tag)) {
+				return cached;
+			}
+			if (!isCurrent(game, form, tag)) {
+				return null;
+			}
+
+			CompressedMap compressedMap = compress(tag, mapData);
+			if (isCurrent(game, form, tag)) {
+				if (cached == null) {
+					compressedMaps.putIfAbsent(key, compressedMap);
+				} else {
+					compressedMaps.replace(key, cached, compressedMap);
+				}
+			}
+			return compressedMap;
+		}
+	}
+
+
+	private static boolean isCurrent(Game game, String form, String tag) {
+		return tag.equals(game.getMapVersion(false) + "." + form);
+	}
+
+
+	private static Object fillLockFor(String key) {
+		Object fillLock = fillLocks.get(key);
+		if (fillLock == null) {
+			Object newFillLock = new Object();
+			fillLock = fillLocks.putIfAbsent(key, newFillLock);
+			if (fillLock == null) {
+				fillLock = newFillLock;
+			}
+		}
+		return fillLock;
+	}
+
+
+	private static CompressedMap compress(String tag, StreamingOutput mapData) {
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			mapData.write(body);
+			if (body.size() < COMPRESSION_THRESHOLD) {
+				return new CompressedMap(tag, body.toByteArray(), false);
+			}
+			ByteArrayOutputStream gzippedBody = new ByteArrayOutputStream(body.size() / 4);
+			GZIPOutputStream gzip = new GZIPOutputStream(gzippedBody);
+			body.writeTo(gzip);
+			gzip.close();
+			return new CompressedMap(tag, gzippedBody.toByteArray(), true);
+		} catch (IOException e) {
+			// Can't happen when writing to memory.
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * Only an Accept header which names the binary type gets it, so browsers and old clients sending
+	 * a wildcard are still served JSON.
+	 */
+	private static boolean acceptsBinary(String accept) {
+		return accepts(accept, MEDIA_TYPE_MAP_BINARY);
+	}
+
+
+	private static boolean acceptsGzip(String acceptEncoding) {
+		return accepts(acceptEncoding, GZIP);
+	}
+
+
+	/**
+	 * Whether the Accept or Accept-Encoding header names the value, without a q of 0.
+	 */
+	private static boolean accepts(String header, String value) {
+		if (header == null) {
+			return false;
+		}
+		for (String range : header.split(",")) {
+			String[] parts = range.split(";");
+			if (!parts[0].trim().equalsIgnoreCase(value)) {
+				continue;
+			}
+			for (int i = 1; i < parts.length; i++) {
+				String[] parameter = parts[i].split("=", 2);
+				if (parameter.length == 2 && parameter[0].trim().equals("q")) {
+					try {
+						return Double.parseDouble(parameter[1].trim()) > 0;
+					} catch (NumberFormatException e) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Whether any tag in the If-None-Match header is the current one. The tags are weak, so a client
+	 * sending back the tag of a gzipped response matches too.
+	 */
+	private static boolean matches(String ifNoneMatch, EntityTag tag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		String quotedTag = "\"" + tag.getValue() + "\"";
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(quotedTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The delayed map's body for one version, gzipped unless it was too small to be worth it.
+	 */
+	private static final class CompressedMap {
+
+		private final String	tag;
+		private final byte[]	body;
+		private final boolean	isGzipped;
+
+
+		private CompressedMap(String tag, byte[] body, boolean isGzipped) {
+			this.tag = tag;
+			this.body = body;
+			this.isGzipped = isGzipped;
+		}
+	}
+
+}
@@ -2,14 +2,17 @@ package liberty_paintball.endpoints;
 
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
 import static liberty_paintball.Config.ENDPOINT_PATH_RESET;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
 
 import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 
-import liberty_paintball.game.Game;
 
 /**
  * @author Dave Waddling
@@ -25,8 +28,8 @@ public class ResetEndpoint {
 
 	@GET
 	@Produces(TEXT_PLAIN)
-	public String reset() {
-		return Game.getInstance().reset();
+	public String reset(@QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena) {
+		return Arenas.lookup(arena).reset();
 	}
 
 }
@@ -0,0 +1,72 @@
+package liberty_paintball.endpoints;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.ENDPOINT_PATH_TIMELINE;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
+import static liberty_paintball.Config.QUERY_PARAM_ATTACKER;
+import static liberty_paintball.Config.QUERY_PARAM_FROM;
+import static liberty_paintball.Config.QUERY_PARAM_LIMIT;
+import static liberty_paintball.Config.QUERY_PARAM_MAX_LATITUDE;
+import static liberty_paintball.Config.QUERY_PARAM_MAX_LONGITUDE;
+import static liberty_paintball.Config.QUERY_PARAM_MIN_LATITUDE;
+import static liberty_paintball.Config.QUERY_PARAM_MIN_LONGITUDE;
+import static liberty_paintball.Config.QUERY_PARAM_PARTICIPANT;
+import static liberty_paintball.Config.QUERY_PARAM_TO;
+import static liberty_paintball.Config.QUERY_PARAM_TYPE;
+
+import java.util.List;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Application;
+
+import liberty_paintball.game.TimelineQuery;
+import liberty_paintball.game.events.Event.EventType;
+import liberty_paintball.mapping.MapPoint;
+
+/**
+ * @author Dave Waddling
+ * 
+ * TimelineQueryEndpoint consumes nothing and returns a list of the MapPoint objects for the events
+ * which match the query parameters, oldest first.
+ * 
+ * Like the OmniscienceEndpoint it's an admin/spectator view, so the events aren't delayed.
+ *
+ */
+@ApplicationPath(APPLICATION_NAME)
+@Path(ENDPOINT_PATH_TIMELINE)
+public class TimelineQueryEndpoint extends Application {
+
+	@GET
+	@Produces(APPLICATION_JSON)
+	public List<MapPoint> query(@QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena, @QueryParam(QUERY_PARAM_ATTACKER) String attacker, @QueryParam(QUERY_PARAM_PARTICIPANT) String participant, @QueryParam(QUERY_PARAM_TYPE) String type, @QueryParam(QUERY_PARAM_FROM) Long from, @QueryParam(QUERY_PARAM_TO) Long to, @QueryParam(QUERY_PARAM_MIN_LATITUDE) Double minLatitude, @QueryParam(QUERY_PARAM_MIN_LONGITUDE) Double minLongitude, @QueryParam(QUERY_PARAM_MAX_LATITUDE) Double maxLatitude, @QueryParam(QUERY_PARAM_MAX_LONGITUDE) Double maxLongitude, @QueryParam(QUERY_PARAM_LIMIT) @DefaultValue("" + TimelineQuery.DEFAULT_LIMIT) int limit) {
+		TimelineQuery query = new TimelineQuery();
+		query.setAttacker(attacker);
+		query.setParticipant(participant);
+		if (type != null) {
+			try {
+				query.setType(EventType.valueOf(type));
+			} catch (IllegalArgumentException e) {
+				System.out.println("WARNING Timeline query for unknown event type '" + type + "'. Returning bad request.");
+				throw new WebApplicationException(BAD_REQUEST);
+			}
+		}
+		query.setFromMillis(from);
+		query.setToMillis(to);
+		query.setBoundingBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+		if (limit <= 0) {
+			System.out.println("WARNING Timeline query with a limit of " + limit + ". Returning bad request.");
+			throw new WebApplicationException(BAD_REQUEST);
+		}
+		query.setLimit(limit);
+		return Arenas.lookup(arena).queryTimeline(query);
+	}
+}
@@ -2,15 +2,18 @@ package liberty_paintball.endpoints;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static liberty_paintball.Config.APPLICATION_NAME;
+import static liberty_paintball.Config.DEFAULT_ARENA;
 import static liberty_paintball.Config.ENDPOINT_PATH_UPDATE_LOCATION;
+import static liberty_paintball.Config.QUERY_PARAM_ARENA;
 
 import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
-import liberty_paintball.game.Game;
 import liberty_paintball.json.requests.UpdateLocationRequest;
 
 /**
@@ -27,8 +30,8 @@ public class UpdateLocationEndpoint {
 
 	@POST
 	@Consumes(APPLICATION_JSON)
-	public void updateLocation(UpdateLocationRequest request) {
-		Game.getInstance().handleUpdateLocationRequest(request);
+	public void updateLocation(UpdateLocationRequest request, @QueryParam(QUERY_PARAM_ARENA) @DefaultValue(DEFAULT_ARENA) String arena) {
+		Arenas.lookup(arena).handleUpdateLocationRequest(request);
 		Response.ok().build();
 	}
 
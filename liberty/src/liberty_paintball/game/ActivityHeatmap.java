@@ -0,0 +1,204 @@
+package liberty_paintball.game;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.log;
+import static java.lang.Math.tan;
+import static java.lang.Math.toRadians;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import liberty_paintball.game.events.Event.EventType;
+import liberty_paintball.mapping.HeatmapTile;
+import liberty_paintball.mapping.MapPoint;
+
+/**
+ * @author Dave Waddling
+ *
+ * Density grids of a Timeline's events for drawing heatmaps, kept up to date as events are added.
+ * Events are counted in the tile they fall in at each of a few zoom levels, by cell of the tile and
+ * by EventType, both for the whole game and in a ring of time buckets covering the last hour.
+ *
+ * A tile is only created once an event falls in it, so the memory used depends on the area played
+ * over rather than how long the game has gone on. Each tile has its own lock, so adding an event only
+ * waits for a reader of one of the tiles it falls in.
+ *
+ */
+class ActivityHeatmap {
+
+	private static final int[]			ZOOM_LEVELS			= { 12, 14, 16, 18 };
+
+	private static final int			CELLS_PER_SIDE		= 16;
+
+	private static final int			BUCKET_MINUTES		= 5;
+
+	private static final int			BUCKET_COUNT		= 12;
+
+	private static final long			BUCKET_MILLIS		= TimeUnit.MINUTES.toMillis(BUCKET_MINUTES);
+
+	private static final int			TYPE_COUNT			= EventType.values().length;
+
+	private final Map<Long, Tile>		tiles;
+
+
+	ActivityHeatmap() {
+		tiles = new ConcurrentHashMap<Long, Tile>();
+	}
+
+
+	/**
+	 * Counts the event. Must be serialized by the caller.
+	 */
+	void add(MapPoint mapPoint) {
+		if (mapPoint.getLocation() == null) {
+			return;
+		}
+		double latitude = mapPoint.getLocation().getLatitude();
+		double longitude = mapPoint.getLocation().getLongitude();
+		long bucket = mapPoint.getTimeOccurred() / BUCKET_MILLIS;
+		int type = mapPoint.getType().ordinal();
+
+		// Positions across the whole world, from 0 to 1 from the north west corner.
+		double worldX = (longitude + 180.0d) / 360.0d;
+		double latitudeRadians = toRadians(latitude);
+		double worldY = (1.0d - log(tan(latitudeRadians) + 1.0d / cos(latitudeRadians)) / PI) / 2.0d;
+		if (!(worldX >= 0.0d && worldX < 1.0d && worldY >= 0.0d && worldY < 1.0d)) {
+			return;
+		}
+
+		for (int zoom : ZOOM_LEVELS) {
+			long cellsAcross = (long) CELLS_PER_SIDE << zoom;
+			long cellX = (long) floor(worldX * cellsAcross);
+			long cellY = (long) floor(worldY * cellsAcross);
+			int x = (int) (cellX / CELLS_PER_SIDE);
+			int y = (int) (cellY / CELLS_PER_SIDE);
+			int cell = (int) (cellY % CELLS_PER_SIDE) * CELLS_PER_SIDE + (int) (cellX % CELLS_PER_SIDE);
+
+			long tileKey = tileKeyOf(zoom, x, y);
+			Tile tile = tiles.get(tileKey);
+			if (tile == null) {
+				tile = new Tile();
+				tiles.put(tileKey, tile);
+			}
+			tile.add(bucket, type, cell);
+		}
+	}
+
+
+	static boolean isZoomLevel(int zoom) {
+		return Arrays.binarySearch(ZOOM_LEVELS, zoom) >= 0;
+	}
+
+
+	/**
+	 * Returns the counts for the tile over the last given number of minutes (rounded up to a whole
+	 * number of buckets, and at most an hour), or for the whole game if minutes is 0.
+	 */
+	HeatmapTile getTile(int zoom, int x, int y, int minutes) {
+		int bucketCount = Math.min((minutes + BUCKET_MINUTES - 1) / BUCKET_MINUTES, BUCKET_COUNT);
+		Tile tile = tiles.get(tileKeyOf(zoom, x, y));
+		int[] counts = tile == null ? new int[TYPE_COUNT * CELLS_PER_SIDE * CELLS_PER_SIDE] : tile.sum(System.currentTimeMillis() / BUCKET_MILLIS, bucketCount);
+
+		int[][] typeCounts = new int[TYPE_COUNT][];
+		for (int type = 0; type < TYPE_COUNT; type++) {
+			int cellsWithEvents = 0;
+			int typeStart = type * CELLS_PER_SIDE * CELLS_PER_SIDE;
+			for (int cell = 0; cell < CELLS_PER_SIDE * CELLS_PER_SIDE; cell++) {
+				if (counts[typeStart + cell] > 0) {
+					cellsWithEvents++;
+				}
+			}
+			typeCounts[type] = new int[cellsWithEvents * 2];
+			int pair = 0;
+			for (int cell = 0; cell < CELLS_PER_SIDE * CELLS_PER_SIDE; cell++) {
+				if (counts[typeStart + cell] > 0) {
+					typeCounts[type][pair++] = cell;
+					typeCounts[type][pair++] = counts[typeStart + cell];
+				}
+			}
+		}
+		return new HeatmapTile(zoom, x, y, CELLS_PER_SIDE, bucketCount * BUCKET_MINUTES, typeCounts);
+	}
+
+
+	private static long tileKeyOf(int zoom, int x, int y) {
+		// Zoom levels are at most 18, so x and y fit in 28 bits each.
+		return CellKeys.spread(((long) zoom << 56) | ((long) x << 28) | y);
+	}
+
+	/**
+	 * The counts for one tile, for the whole game and in a ring of time buckets. Counts are held in one
+	 * array per bucket, by type and then by cell.
+	 */
+	private static final class Tile {
+
+		private final ReentrantLock	lock;
+		private final int[]			totalCounts;
+		private final int[][]		bucketCounts;
+		private final long[]		buckets;
+
+
+		private Tile() {
+			lock = new ReentrantLock();
+			totalCounts = new int[TYPE_COUNT * CELLS_PER_SIDE * CELLS_PER_SIDE];
+			bucketCounts = new int[BUCKET_COUNT][];
+			buckets = new long[BUCKET_COUNT];
+		}
+
+
+		private void add(long bucket, int type, int cell) {
+			int index = type * CELLS_PER_SIDE * CELLS_PER_SIDE + cell;
+			lock.lock();
+			try {
+				totalCounts[index]++;
+
+				// Reuses the slot of a bucket which has gone out of the ring. Events older than the bucket
+				// already in their slot are only counted for the whole game.
+				int slot = (int) (bucket % BUCKET_COUNT);
+				if (bucketCounts[slot] == null) {
+					bucketCounts[slot] = new int[totalCounts.length];
+					buckets[slot] = bucket;
+				} else if (buckets[slot] < bucket) {
+					Arrays.fill(bucketCounts[slot], 0);
+					buckets[slot] = bucket;
+				} else if (buckets[slot] > bucket) {
+					return;
+				}
+				bucketCounts[slot][index]++;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+
+		/**
+		 * Sums the buckets up to and including the current one, or returns the whole game's counts when
+		 * no buckets are asked for.
+		 */
+		private int[] sum(long currentBucket, int bucketCount) {
+			lock.lock();
+			try {
+				if (bucketCount == 0) {
+					return totalCounts.clone();
+				}
+				int[] counts = new int[totalCounts.length];
+				for (int slot = 0; slot < BUCKET_COUNT; slot++) {
+					if (bucketCounts[slot] != null && buckets[slot] > currentBucket - bucketCount && buckets[slot] <= currentBucket) {
+						for (int index = 0; index < counts.length; index++) {
+							counts[index] += bucketCounts[slot][index];
+						}
+					}
+				}
+				return counts;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package liberty_paintball.game;
+
+/**
+ * @author Dave Waddling
+ *
+ * Spreads the bits of grid cell and tile keys before they're used as map keys. The keys are a row in
+ * the high half and a column in the low half, and Long.hashCode XORs the halves, so every cell in a
+ * small area hashes to one of only a handful of values and the maps holding them fill up with
+ * collisions. Multiplying by an odd constant keeps keys unique and can be undone, so keys read back
+ * out of a map can still be taken apart.
+ *
+ */
+final class CellKeys {
+
+	// The 64 bit golden ratio, and its inverse modulo 2^64.
+	private static final long	SPREAD		= 0x9E3779B97F4A7C15L;
+	private static final long	UNSPREAD	= 0xF1DE83E19937733DL;
+
+
+	private CellKeys() {
+	}
+
+
+	static long spread(long key) {
+		return key * SPREAD;
+	}
+
+
+	static long unspread(long spreadKey) {
+		return spreadKey * UNSPREAD;
+	}
+
+}
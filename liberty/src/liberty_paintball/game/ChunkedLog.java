@@ -0,0 +1,138 @@
+package liberty_paintball.game;
+
+import java.util.Arrays;
+
+/**
+ * @author Dave Waddling
+ *
+ * An append-only log of entries numbered by sequence, stored in fixed size chunks which are never
+ * moved once written. Old entries can be dropped from the front a whole chunk at a time, but the
+ * sequence numbers of the entries which are left never change.
+ *
+ * Appends must be serialized by the caller. Reads don't take a lock: a Snapshot is taken of the
+ * entries which had been appended when it was taken, and keeps working even if its entries are
+ * dropped from the log afterwards.
+ *
+ */
+class ChunkedLog<T> {
+
+	// Must be a power of two.
+	static final int			CHUNK_SIZE	= 256;
+
+	private static final int	CHUNK_SHIFT	= Integer.numberOfTrailingZeros(CHUNK_SIZE);
+
+	private volatile Chunks		chunks;
+	private volatile long		end;
+
+
+	ChunkedLog() {
+		this(0);
+	}
+
+
+	/**
+	 * Creates an empty log whose first entry will have the given sequence number, e.g. to carry on the
+	 * numbering of a log which has been checkpointed. It must be the start of a chunk.
+	 */
+	ChunkedLog(long first) {
+		if (chunkStart(first) != first) {
+			throw new IllegalArgumentException("A log can only start at the start of a chunk, not " + first + ".");
+		}
+		chunks = new Chunks(new Object[0][], first >>> CHUNK_SHIFT);
+		end = first;
+	}
+
+
+	void append(T entry) {
+		long sequence = end;
+		Chunks current = chunks;
+		int chunk = (int) ((sequence >>> CHUNK_SHIFT) - current.firstChunk);
+		if (chunk == current.entries.length) {
+			// Snapshots holding the old directory still see every chunk they could need.
+			Object[][] grownEntries = Arrays.copyOf(current.entries, chunk + 1);
+			grownEntries[chunk] = new Object[CHUNK_SIZE];
+			current = new Chunks(grownEntries, current.firstChunk);
+			chunks = current;
+		}
+		current.entries[chunk][(int) (sequence & (CHUNK_SIZE - 1))] = entry;
+
+		// Publishes the entry to readers.
+		end = sequence + 1;
+	}
+
+
+	/**
+	 * Drops the whole chunks before the given sequence number. Must be serialized with appends.
+	 */
+	void dropBefore(long sequence) {
+		Chunks current = chunks;
+		long dropChunks = Math.min((sequence >>> CHUNK_SHIFT) - current.firstChunk, current.entries.length);
+		if (dropChunks <= 0) {
+			return;
+		}
+		Object[][] remainingEntries = Arrays.copyOfRange(current.entries, (int) dropChunks, current.entries.length);
+		chunks = new Chunks(remainingEntries, current.firstChunk + dropChunks);
+	}
+
+
+	Snapshot<T> snapshot() {
+		// Reading the end first makes every chunk it covers visible.
+		long snapshotEnd = end;
+		return new Snapshot<T>(chunks, snapshotEnd);
+	}
+
+
+	/**
+	 * Rounds the sequence number down to the start of its chunk, which is where dropBefore() would stop.
+	 */
+	static long chunkStart(long sequence) {
+		return sequence & ~((long) CHUNK_SIZE - 1);
+	}
+
+	/**
+	 * The chunks currently in the log, replaced as a whole when the log grows or is trimmed.
+	 */
+	private static final class Chunks {
+
+		private final Object[][]	entries;
+		private final long			firstChunk;
+
+
+		private Chunks(Object[][] entries, long firstChunk) {
+			this.entries = entries;
+			this.firstChunk = firstChunk;
+		}
+	}
+
+	/**
+	 * The entries in the log at the point the snapshot was taken.
+	 */
+	static final class Snapshot<T> {
+
+		private final Chunks	chunks;
+		private final long		end;
+
+
+		private Snapshot(Chunks chunks, long end) {
+			this.chunks = chunks;
+			this.end = end;
+		}
+
+
+		long first() {
+			return Math.min(chunks.firstChunk << CHUNK_SHIFT, end);
+		}
+
+
+		long end() {
+			return end;
+		}
+
+
+		@SuppressWarnings("unchecked")
+		T get(long sequence) {
+			return (T) chunks.entries[(int) ((sequence >>> CHUNK_SHIFT) - chunks.firstChunk)][(int) (sequence & (CHUNK_SIZE - 1))];
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package liberty_paintball.game;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Dave Waddling
+ *
+ * A single game thread which applies commands one at a time in the order they were submitted.
+ * Request threads put commands into a bounded ring buffer and wait for the game thread to apply
+ * them, so when the buffer fills up requests simply queue for a slot rather than piling up.
+ *
+ * As only the game thread ever changes game state the locks it takes are never contended.
+ *
+ */
+public class CommandLoop implements Runnable {
+
+	private static final int						RING_BUFFER_SIZE			= 1024;
+
+	private static final long						REPORT_INTERVAL_MILLIS		= TimeUnit.SECONDS.toMillis(10);
+
+	private final BlockingQueue<FutureTask<?>>		commands;
+	private final Thread							thread;
+	private long									commandsSinceLastReport;
+	private long									lastReportTimeMillis;
+
+
+	public CommandLoop(String name) {
+		commands = new ArrayBlockingQueue<FutureTask<?>>(RING_BUFFER_SIZE);
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+	}
+
+
+	public void start() {
+		lastReportTimeMillis = System.currentTimeMillis();
+		thread.start();
+		System.out.println("INFO Started command loop '" + thread.getName() + "'.");
+	}
+
+
+	/**
+	 * Submits the command and waits for the game thread to apply it. Commands submitted from the
+	 * game thread itself are applied straight away as waiting would deadlock.
+	 */
+	public <T> T execute(Callable<T> command) {
+		FutureTask<T> task = new FutureTask<T>(command);
+		if (Thread.currentThread() == thread) {
+			task.run();
+		} else {
+			try {
+				commands.put(task);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while submitting a command to the game.", e);
+			}
+		}
+		return await(task);
+	}
+
+
+	/**
+	 * Submits the command without waiting for it, the callback is completed by the game thread once
+	 * the command has been applied. The caller only waits if the ring buffer is full.
+	 */
+	public <T> void submit(Callable<T> command, final GameCallback<T> callback) {
+		FutureTask<T> task = new FutureTask<T>(command) {
+			@Override
+			protected void done() {
+				try {
+					callback.completed(get());
+				} catch (ExecutionException e) {
+					callback.failed(e.getCause());
+				} catch (InterruptedException e) {
+					// Not possible as the task has already completed.
+					callback.failed(e);
+				}
+			}
+		};
+		if (Thread.currentThread() == thread) {
+			task.run();
+			return;
+		}
+		try {
+			commands.put(task);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			callback.failed(new IllegalStateException("Interrupted while submitting a command to the game.", e));
+		}
+	}
+
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				FutureTask<?> task = commands.poll(REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if (task != null) {
+					task.run();
+					commandsSinceLastReport++;
+				}
+				reportThroughput();
+			} catch (InterruptedException e) {
+				System.out.println("WARNING Command loop '" + thread.getName() + "' was interrupted. Stopping.");
+				return;
+			}
+		}
+	}
+
+
+	private void reportThroughput() {
+		long now = System.currentTimeMillis();
+		long elapsedMillis = now - lastReportTimeMillis;
+		if (elapsedMillis >= REPORT_INTERVAL_MILLIS) {
+			if (commandsSinceLastReport > 0) {
+				System.out.println("INFO Command loop '" + thread.getName() + "' applied " + (commandsSinceLastReport * 1000 / elapsedMillis) + " commands/sec.");
+			}
+			commandsSinceLastReport = 0;
+			lastReportTimeMillis = now;
+		}
+	}
+
+
+	private static <T> T await(FutureTask<T> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					// The command is already queued so it will be applied regardless, wait for it.
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Game command failed.", cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
@@ -1,29 +1,65 @@
 package liberty_paintball.game;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import liberty_paintball.cluster.ClusterNode;
 import liberty_paintball.demo.Demo;
 import liberty_paintball.game.events.Event;
 import liberty_paintball.game.events.PlayerHitEvent;
 import liberty_paintball.game.events.PlayerMissEvent;
 import liberty_paintball.game.events.PlayerOutgunnedEvent;
 import liberty_paintball.game.events.Event.EventType;
+import liberty_paintball.journal.Journal;
 import liberty_paintball.json.requests.AttackRequest;
+import liberty_paintball.json.requests.BatchItem;
+import liberty_paintball.json.requests.GameActionRequest;
 import liberty_paintball.json.requests.JoinGameRequest;
 import liberty_paintball.json.requests.LeaveGameRequest;
 import liberty_paintball.json.requests.UpdateLocationRequest;
 import liberty_paintball.json.responses.AttackResponse;
+import liberty_paintball.json.responses.BatchItemResponse;
 import liberty_paintball.json.responses.IntelResponse;
 import liberty_paintball.json.responses.JoinResponse;
+import liberty_paintball.mapping.HeatmapTile;
+import liberty_paintball.mapping.MapBinaryWriter;
+import liberty_paintball.mapping.MapDelta;
+import liberty_paintball.mapping.MapJsonWriter;
 import liberty_paintball.mapping.MapPoint;
+import liberty_paintball.mapping.MapRollup;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+import static liberty_paintball.Config.ENGINE_LOCKED;
+import static liberty_paintball.Config.ENGINE_PROPERTY;
+import static liberty_paintball.Config.ENGINE_SINGLE_WRITER;
+import static liberty_paintball.Config.ENGINE_TICK;
+import static liberty_paintball.Config.JOURNAL_CHECKPOINT_MILLIS_PROPERTY;
+import static liberty_paintball.Config.JOURNAL_DIR_PROPERTY;
+import static liberty_paintball.Config.JOURNAL_FSYNC_MILLIS_PROPERTY;
+import static liberty_paintball.Config.RANGE_INDEX_GRID;
+import static liberty_paintball.Config.RANGE_INDEX_PROPERTY;
+import static liberty_paintball.Config.RANGE_INDEX_STORE;
+import static liberty_paintball.Config.REGION_LOCK_STRIPES_PROPERTY;
+import static liberty_paintball.Config.TICK_MILLIS_PROPERTY;
+import static liberty_paintball.Config.TIMELINE_MAX_EVENTS_PROPERTY;
+import static liberty_paintball.Config.TIMELINE_RETENTION_MINUTES_PROPERTY;
 import static liberty_paintball.json.responses.AttackResponse.ResponseType.HIT;
 import static liberty_paintball.json.responses.AttackResponse.ResponseType.INVALID_REQUEST;
 import static liberty_paintball.json.responses.AttackResponse.ResponseType.MISS;
@@ -32,8 +68,33 @@ import static liberty_paintball.json.responses.AttackResponse.ResponseType.OUTGU
 /**
  * @author Dave Waddling
  * 
- * The Game class is a singleton which persists between calls to the various JAX-RS endpoints. It handles
- * all of the game actions in the sequence in which they arrive and in a thread safe manner.
+ * The Game class holds the state of one arena, which persists between calls to the various JAX-RS endpoints.
+ * Arenas are looked up from the GameRegistry. It handles all of the game actions in the sequence in which
+ * they arrive and in a thread safe manner.
+ * 
+ * Locking can be striped by region of the playing field (see RegionLocks) so attacks are only ordered
+ * against other attacks nearby, though by default a single lock covers the whole field. Joining and
+ * leaving are ordered by a separate membership lock, while location updates, look ups, intel and map
+ * data don't take a lock at all. Location updates instead swap in a new PlayerState with
+ * compare-and-set, so they never hold up attackers.
+ * 
+ * Alternatively the game can be started in single writer mode where every action that changes the
+ * game is handed to a CommandLoop and applied by one game thread in the order it was submitted.
+ * The Async variants of the handlers return as soon as the action is queued and complete a
+ * GameCallback from the game thread once it's been applied.
+ * 
+ * In tick mode attacks and location updates are collected by a TickLoop and resolved together at the end
+ * of each tick, with every attack checked against the same snapshot of positions (see resolveTick).
+ * 
+ * When the game is split across a cluster of servers (see ClusterNode) each server only holds the players
+ * in its part of the field. Actions in another part are forwarded to the server which owns it, players are
+ * pulled from whichever server holds them, and range finding near the edges also asks the neighbours. The
+ * handleLocal methods are the entry points for requests forwarded from other servers.
+ *
+ * Optionally every change to the game is recorded in a Journal as it's applied, and on startup the journal
+ * is replayed to rebuild the players, their names, the counters and the timeline (see JournalReplayer).
+ * A GameCheckpoint is written in the background every so often, so a restart loads the latest checkpoint
+ * and only replays the journal since it was taken.
  *
  */
 public final class Game {
@@ -42,16 +103,29 @@ public final class Game {
 
 	private static final int	GAME_INTEL_ENTRY_COUNT		= 3;
 
-	private static final int	ACTIVITY_INTEL_QUEUE_SIZE	= 3;
+	private static final int	ACTIVITY_INTEL_RING_SIZE	= 3;
+
+	private static final long	DEFAULT_TICK_MILLIS			= 50;
+
+	private static final int	DEFAULT_REGION_LOCK_STRIPES	= 1;
 
-	private static Game			instance					= null;
+	private static final long	DELAYED_MAP_PROMOTION_MILLIS	= 1000;
 
+	private static final long	DEFAULT_RETENTION_MINUTES	= 60;
 
+	private static final long	DEFAULT_MAX_RETAINED_EVENTS	= 100000;
+
+	private static final long	DEFAULT_JOURNAL_FSYNC_MILLIS	= 100;
+
+	private static final long	DEFAULT_CHECKPOINT_MILLIS	= 60000;
+
+
+
+	/**
+	 * Returns the game in the default arena.
+	 */
 	public static final Game getInstance() {
-		if (instance == null) {
-			instance = new Game();
-		}
-		return instance;
+		return GameRegistry.getInstance().getDefaultArena();
 	}
 
 
@@ -60,130 +134,684 @@ public final class Game {
 		throw new CloneNotSupportedException();
 	}
 
+
+	public String getArenaId() {
+		return arenaId;
+	}
+
+	private final String					arenaId;
 	private ConcurrentMap<String, Player>	mapUsernameToPlayer;
+	private Map<String, Player>				mapUsernameToReleasedPlayer;
 	private NameGenerator					nameGenerator;
-	private Timeline						timeline;
-	private ReentrantLock					lock;
-	private Queue<IntelResponse>			activityIntel;
-	private int								totalTurnsTaken;
-	private int								totalScore;
+	private volatile Timeline				timeline;
+	private ScheduledExecutorService		mapScheduler;
+	private long							retentionMillis;
+	private long							maxRetainedEvents;
+	private PlayerGrid						playerGrid;
+	private PlayerIndex						playerIndex;
+	private RegionLocks						regionLocks;
+	private ReentrantLock					membershipLock;
+	private ReentrantReadWriteLock			checkpointLock;
+	private CommandLoop						commandLoop;
+	private TickLoop						tickLoop;
+	private ClusterNode						cluster;
+	private Journal							journal;
+	private ScheduledExecutorService		checkpointScheduler;
+	private volatile IntelFeed				activityIntel;
+	private AtomicInteger					totalTurnsTaken;
+	private AtomicInteger					totalScore;
+	private AtomicLong						playersVersion;
 
 	private Random							random;
 
 
-	private Game() {
+	Game(String arenaId) {
+		this.arenaId = arenaId;
+
 		// Create a name generator to give players unique names.
 		nameGenerator = new NameGenerator();
 
 		// Game state is maintained as map of usernames to data about players.
 		mapUsernameToPlayer = new ConcurrentHashMap<String, Player>();
 
+		// Players handed over to another server in the cluster which it hasn't confirmed adopting yet,
+		// guarded by the membership lock.
+		mapUsernameToReleasedPlayer = new HashMap<String, Player>();
+
 		// All game events are added to a timeline for the generation of news/maps.
 		timeline = new Timeline();
 
+		// Events are moved onto the delayed map in the background so requests for it are just a read,
+		// and events too old to keep are rolled up at the same time.
+		retentionMillis = TimeUnit.MINUTES.toMillis(Math.max(Long.getLong(TIMELINE_RETENTION_MINUTES_PROPERTY, DEFAULT_RETENTION_MINUTES), Timeline.NEWS_FEED_DELAY_MINUTES));
+		maxRetainedEvents = Math.max(Long.getLong(TIMELINE_MAX_EVENTS_PROPERTY, DEFAULT_MAX_RETAINED_EVENTS), 1);
+		mapScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "liberty-paintball-map-" + Game.this.arenaId);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mapScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					timeline.rollUpOldEvents(System.currentTimeMillis() - retentionMillis, maxRetainedEvents);
+				} catch (RuntimeException e) {
+					System.out.println("WARNING Failed to update the delayed map: " + e);
+				}
+			}
+		}, DELAYED_MAP_PROMOTION_MILLIS, DELAYED_MAP_PROMOTION_MILLIS, TimeUnit.MILLISECONDS);
+
+		// Players are also indexed by location so range finding only looks at nearby players.
+		// The grid's cells are also what the region locks are striped over, whichever index is used.
+		playerGrid = new PlayerGrid(ATTACK_RADIUS_METERS);
+		String rangeIndex = System.getProperty(RANGE_INDEX_PROPERTY, RANGE_INDEX_GRID);
+		System.out.println("INFO Indexing players for range finding with the '" + rangeIndex + "' index.");
+		if (RANGE_INDEX_STORE.equals(rangeIndex)) {
+			playerIndex = new PlayerStore(ATTACK_RADIUS_METERS);
+		} else {
+			playerIndex = playerGrid;
+		}
+
 		// Track a few stats to provide intel.
-		totalTurnsTaken = 0;
-		totalScore = 0;
+		totalTurnsTaken = new AtomicInteger();
+		totalScore = new AtomicInteger();
+
+		// Counts changes to the players' locations, which are on the omniscient map alongside the timeline.
+		playersVersion = new AtomicLong();
 
-		// List of intel which will be populated from player activities.
-		activityIntel = new ArrayBlockingQueue<IntelResponse>(ACTIVITY_INTEL_QUEUE_SIZE);
+		// Intel which will be populated from player activities, kept for each consumer to read.
+		activityIntel = new IntelFeed(ACTIVITY_INTEL_RING_SIZE);
 
-		// A fair lock to ensure the multi-threaded nature of the game doesn't
-		// lead to race conditions.
-		lock = new ReentrantLock(true);
+		// Fair locks to ensure the multi-threaded nature of the game doesn't
+		// lead to race conditions. Actions on the field lock the regions they
+		// affect, while players joining or leaving are ordered separately.
+		regionLocks = new RegionLocks(Integer.getInteger(REGION_LOCK_STRIPES_PROPERTY, DEFAULT_REGION_LOCK_STRIPES));
+		membershipLock = new ReentrantLock(true);
+
+		// Eliminations and scores applied for other servers in the cluster hold this lock's read side
+		// rather than the region locks, and a checkpoint holds the write side.
+		checkpointLock = new ReentrantReadWriteLock(true);
+
+		// The cluster is disabled unless other servers have been configured.
+		cluster = ClusterNode.getInstance();
 
 		// Create a random number generator for returning random bits of intel.
 		random = new Random();
+
+		// Load the last checkpoint and replay whatever was journaled after it before the game was last
+		// stopped. The journal is only used for recording once it's been replayed, so replaying can go
+		// through the usual methods.
+		String journalDirectory = System.getProperty(JOURNAL_DIR_PROPERTY);
+		if (journalDirectory != null) {
+			long restoreStartNanos = System.nanoTime();
+			Journal replayedJournal = new Journal(new File(journalDirectory, arenaId), Long.getLong(JOURNAL_FSYNC_MILLIS_PROPERTY, DEFAULT_JOURNAL_FSYNC_MILLIS));
+			replayedJournal.replay(new JournalReplayer(), restoreCheckpoint(replayedJournal.getCheckpointFile()));
+			replayedJournal.start();
+			System.out.println("INFO Restored the game in arena '" + arenaId + "' in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - restoreStartNanos) + "ms.");
+			journal = replayedJournal;
+
+			// The restored events are indexed and serialized in the background while the game is served.
+			final Timeline restoredTimeline = timeline;
+			mapScheduler.execute(new Runnable() {
+				@Override
+				public void run() {
+					long prepareStartNanos = System.nanoTime();
+					try {
+						restoredTimeline.prepareRestoredEvents();
+					} catch (RuntimeException e) {
+						System.out.println("WARNING Failed to index the restored events: " + e);
+						return;
+					}
+					System.out.println("INFO Indexed the restored events in arena '" + Game.this.arenaId + "' in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - prepareStartNanos) + "ms.");
+				}
+			});
+
+			long checkpointMillis = Long.getLong(JOURNAL_CHECKPOINT_MILLIS_PROPERTY, DEFAULT_CHECKPOINT_MILLIS);
+			checkpointScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "liberty-paintball-checkpoint-" + Game.this.arenaId);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			checkpointScheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						writeCheckpoint();
+					} catch (RuntimeException e) {
+						System.out.println("WARNING Failed to write a checkpoint: " + e);
+					}
+				}
+			}, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+		}
+
+		// In single writer mode a dedicated game thread applies all of the actions
+		// which change the game, otherwise they're applied on the request threads.
+		String engine = System.getProperty(ENGINE_PROPERTY, ENGINE_LOCKED);
+		System.out.println("INFO Starting game in arena '" + arenaId + "' with the '" + engine + "' engine.");
+		if (ENGINE_SINGLE_WRITER.equals(engine)) {
+			commandLoop = new CommandLoop("liberty-paintball-game-" + arenaId);
+			commandLoop.start();
+		} else if (ENGINE_TICK.equals(engine)) {
+			tickLoop = new TickLoop("liberty-paintball-tick-" + arenaId, Long.getLong(TICK_MILLIS_PROPERTY, DEFAULT_TICK_MILLIS), new TickLoop.Resolver() {
+				@Override
+				public void resolveTick(List<TickLoop.Action<?>> actions) {
+					Game.this.resolveTick(actions);
+				}
+			});
+			tickLoop.start();
+		}
+	}
+
+
+	/**
+	 * Restores the game from the checkpoint if there is one, returning the position in the journal to
+	 * replay from.
+	 */
+	private Journal.Position restoreCheckpoint(File checkpointFile) {
+		if (!checkpointFile.exists()) {
+			return Journal.Position.START;
+		}
+
+		GameCheckpoint checkpoint;
+		try {
+			checkpoint = GameCheckpoint.read(checkpointFile);
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't read the checkpoint " + checkpointFile + ".", e);
+		}
+		for (Player player : checkpoint.getPlayers()) {
+			mapUsernameToPlayer.put(player.getUsername(), player);
+			if (player.getLocation() != null) {
+				playerIndex.add(player, player.getLocation());
+				if (player.isEliminated()) {
+					playerIndex.markEliminated(player);
+				}
+			}
+		}
+		nameGenerator.restoreFreeNames(checkpoint.getFreeNames());
+		totalTurnsTaken.set(checkpoint.getTotalTurnsTaken());
+		totalScore.set(checkpoint.getTotalScore());
+		timeline = checkpoint.getTimeline();
+		System.out.println("INFO Restored " + mapUsernameToPlayer.size() + " players and " + timeline.getRetainedEventCount() + " events from the checkpoint " + checkpointFile + ".");
+		return checkpoint.getJournalPosition();
+	}
+
+
+	/**
+	 * Captures a checkpoint while the game is locked, like a reset, then writes it out once the game has
+	 * been unlocked.
+	 */
+	private void writeCheckpoint() {
+		GameCheckpoint checkpoint = execute(new Callable<GameCheckpoint>() {
+			@Override
+			public GameCheckpoint call() {
+				return captureCheckpoint();
+			}
+		});
+
+		try {
+			checkpoint.write(journal.getCheckpointTempFile());
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't write a checkpoint.", e);
+		}
+		if (journal.installCheckpoint(checkpoint.getJournalPosition())) {
+			System.out.println("INFO Wrote a checkpoint of arena '" + arenaId + "' with " + timeline.getRetainedEventCount() + " events.");
+		}
+	}
+
+
+	private GameCheckpoint captureCheckpoint() {
+		// Joins, leaves and attacks hold the membership or region locks, and eliminations and scores
+		// applied for other servers hold the checkpoint lock, so none of them can be caught between
+		// changing the game and journaling it, and they aren't replayed over the checkpoint again.
+		// Plain location updates take no lock, so one may be replayed over it, which at worst puts
+		// the player back a step until their next update.
+		membershipLock.lock();
+		int[] lockedStripes = regionLocks.lockAll();
+		checkpointLock.writeLock().lock();
+		try {
+			// Released players haven't been journaled as leaving, so they're restored along with the rest.
+			List<Player> players = new ArrayList<Player>(mapUsernameToPlayer.values());
+			players.addAll(mapUsernameToReleasedPlayer.values());
+			return new GameCheckpoint(journal.getPosition(), players, nameGenerator.getFreeNames(), totalTurnsTaken.get(), totalScore.get(), timeline.checkpoint());
+		} finally {
+			checkpointLock.writeLock().unlock();
+			regionLocks.unlock(lockedStripes);
+			membershipLock.unlock();
+		}
+	}
+
+
+	private <T> T execute(Callable<T> command) {
+		if (commandLoop != null) {
+			return commandLoop.execute(command);
+		}
+		try {
+			return command.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException("Game command failed.", e);
+		}
+	}
+
+
+	/**
+	 * Hands the command to the game thread and returns straight away, the callback is completed once
+	 * it has been applied. Without a game thread the command is applied on the calling thread.
+	 */
+	private <T> void executeAsync(Callable<T> command, GameCallback<T> callback) {
+		if (commandLoop != null) {
+			commandLoop.submit(command, callback);
+		} else {
+			completeNow(command, callback);
+		}
+	}
+
+
+	private static <T> void completeNow(Callable<T> command, GameCallback<T> callback) {
+		T result;
+		try {
+			result = command.call();
+		} catch (Exception e) {
+			callback.failed(e);
+			return;
+		}
+		callback.completed(result);
 	}
 
 
 	public JoinResponse handleJoinGameRequest(JoinGameRequest request) {
-		lock.lock();
+		if (cluster.isEnabled()) {
+			// Players join through the coordinator so in-game names are unique across the cluster,
+			// unless they're already in the game on another server.
+			if (!cluster.isCoordinator()) {
+				return cluster.forwardJoin(arenaId, request);
+			}
+			if (!mapUsernameToPlayer.containsKey(request.getUsername())) {
+				PlayerIdentity identity = cluster.lookupIdentity(arenaId, request.getUsername());
+				if (identity != null) {
+					return new JoinResponse(identity);
+				}
+			}
+		}
+		return handleLocalJoinGameRequest(request);
+	}
+
+
+	public JoinResponse handleLocalJoinGameRequest(JoinGameRequest request) {
+		return execute(joinGameCommand(request));
+	}
+
+
+	public void handleJoinGameRequestAsync(final JoinGameRequest request, GameCallback<JoinResponse> callback) {
+		if (cluster.isEnabled()) {
+			completeNow(new Callable<JoinResponse>() {
+				@Override
+				public JoinResponse call() {
+					return handleJoinGameRequest(request);
+				}
+			}, callback);
+			return;
+		}
+		executeAsync(joinGameCommand(request), callback);
+	}
+
+
+	private Callable<JoinResponse> joinGameCommand(final JoinGameRequest request) {
+		return new Callable<JoinResponse>() {
+			@Override
+			public JoinResponse call() {
+				return applyJoinGameRequest(request);
+			}
+		};
+	}
+
+
+	private JoinResponse applyJoinGameRequest(JoinGameRequest request) {
+		membershipLock.lock();
 		try {
 			String username = request.getUsername();
 			System.out.println("***** [JOIN] ***** Player joined: " + username);
 
 			if (mapUsernameToPlayer.containsKey(username)) {
 				// TODO Log and ignore, player's already in the game.
+			} else if (journal != null && !Journal.isRecordable(username)) {
+				// Turned away before anything changes, as every record about them would be too large to journal.
+				System.out.println("WARNING Username is too long to journal. Returning no identity.");
+				return new JoinResponse(null);
 			} else {
 				// Add the player.
 				PlayerIdentity playerIdentity = nameGenerator.createRandomUniqueIdentity(username);
 				System.out.println("***** [ASSIGN] ***** '" + username + "' is known in game as '" + playerIdentity.getGeneratedName() + "'.");
 				mapUsernameToPlayer.put(username, new Player(playerIdentity));
+				if (journal != null) {
+					journal.recordJoin(playerIdentity);
+				}
 			}
 			return new JoinResponse(mapUsernameToPlayer.get(username).getIdentity());
 		} finally {
-			lock.unlock();
+			membershipLock.unlock();
 		}
 	}
 
 
 	public void handleLeaveGameRequest(LeaveGameRequest request) {
-		lock.lock();
-		try {
-			String username = request.getUsername();
-			System.out.println("***** [LEAVE] ***** Player left: " + username);
+		handleLocalLeaveGameRequest(request);
+		if (cluster.isEnabled()) {
+			cluster.broadcastLeave(arenaId, request.getUsername());
+		}
+	}
 
-			if (!mapUsernameToPlayer.containsKey(username)) {
-				// TODO Log and ignore, player isn't in the game.
-			} else {
-				// Remove the player.
-				mapUsernameToPlayer.remove(username);
 
-				// Don't add an event ATM.
-				// timeline.addEvent(new PlayerLeaveEvent(username));
+	public void handleLocalLeaveGameRequest(final LeaveGameRequest request) {
+		execute(new Callable<Void>() {
+			@Override
+			public Void call() {
+				applyLeaveGameRequest(request);
+				return null;
+			}
+		});
+	}
+
+
+	private void applyLeaveGameRequest(LeaveGameRequest request) {
+		String username = request.getUsername();
+		System.out.println("***** [LEAVE] ***** Player left: " + username);
+
+		if (removePlayer(username) == null) {
+			// TODO Log and ignore, player isn't in the game.
+		} else {
+			// Don't add an event ATM.
+			// timeline.addEvent(new PlayerLeaveEvent(username));
+		}
+	}
+
+
+	private Player removePlayer(String username) {
+		membershipLock.lock();
+		try {
+			Player leavingPlayer = takePlayer(username);
+			if (leavingPlayer == null) {
+				// A player who leaves while being handed over.
+				leavingPlayer = mapUsernameToReleasedPlayer.remove(username);
 			}
+			if (leavingPlayer != null && journal != null) {
+				journal.recordLeave(username);
+			}
+			return leavingPlayer;
 		} finally {
-			lock.unlock();
+			membershipLock.unlock();
 		}
 	}
 
 
-	public void handleUpdateLocationRequest(UpdateLocationRequest request) {
-		lock.lock();
+	/**
+	 * Takes the player off the field, returning null if they aren't held here. Must be called with
+	 * the membership lock held.
+	 */
+	private Player takePlayer(String username) {
+		Player player = mapUsernameToPlayer.remove(username);
+		if (player != null) {
+			int[] lockedStripes = lockRegionAround(player, null);
+			try {
+				playerIndex.remove(player, player.getLocation());
+			} finally {
+				regionLocks.unlock(lockedStripes);
+			}
+			playersVersion.incrementAndGet();
+		}
+		return player;
+	}
+
+
+	/**
+	 * Hands the player over to another server in the cluster, returning null if they aren't held here.
+	 * Like the other requests from servers in the cluster it's applied on the calling thread.
+	 *
+	 * The player is taken off the field straight away but kept, and only journaled as leaving once the
+	 * other server confirms it has adopted them with confirmRelease(). If the reply is lost the other
+	 * server can ask again and gets the same player, and if this server restarts in the meantime the
+	 * player is restored here, so a lost reply never loses the player.
+	 */
+	public Player releasePlayer(String username) {
+		membershipLock.lock();
 		try {
-			String username = request.getUsername();
-			double latitude = request.getLatitude();
-			double longitude = request.getLongitude();
+			Player releasedPlayer = mapUsernameToReleasedPlayer.get(username);
+			if (releasedPlayer == null) {
+				releasedPlayer = takePlayer(username);
+				if (releasedPlayer != null) {
+					mapUsernameToReleasedPlayer.put(username, releasedPlayer);
+				}
+			}
+			return releasedPlayer;
+		} finally {
+			membershipLock.unlock();
+		}
+	}
 
-			System.out.println("***** [UPDATE] ***** Received a location update request from " + username + " @ " + latitude + "  " + longitude);
 
-			if (!mapUsernameToPlayer.containsKey(username)) {
-				System.out.println("WARNING Updating location for player who doesn't exist. Ignoring.");
-				return;
+	/**
+	 * Forgets a player released to another server once it has adopted them. Confirming the same player
+	 * again does nothing.
+	 */
+	public void confirmRelease(String username) {
+		membershipLock.lock();
+		try {
+			if (mapUsernameToReleasedPlayer.remove(username) != null && journal != null) {
+				journal.recordLeave(username);
 			}
+		} finally {
+			membershipLock.unlock();
+		}
+	}
 
-			Player updatingPlayer = mapUsernameToPlayer.get(username);
-			updatingPlayer.setLocation(new Location(latitude, longitude));
 
-			List<Player> playersInRange = findPlayersInRange(updatingPlayer);
-			if (playersInRange.size() > 0) {
-				enqueueActivityIntel(new IntelResponse(MessageGenerator.generateCloseEncounterMessage(updatingPlayer, playersInRange), true));
+	private void adoptPlayer(Player player) {
+		membershipLock.lock();
+		try {
+			// A player handed back before this server heard the first hand over was confirmed.
+			mapUsernameToReleasedPlayer.remove(player.getUsername());
+			if (mapUsernameToPlayer.putIfAbsent(player.getUsername(), player) == null) {
+				if (player.getLocation() != null) {
+					playerIndex.add(player, player.getLocation());
+					playersVersion.incrementAndGet();
+				}
+				if (journal != null) {
+					journalAdoptedPlayer(player);
+				}
 			}
 		} finally {
-			lock.unlock();
+			membershipLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Journals a player handed over from another server as if they'd joined here, then moved,
+	 * scored and been eliminated.
+	 */
+	private void journalAdoptedPlayer(Player player) {
+		PlayerState state = player.getState();
+		journal.recordJoin(player.getIdentity());
+		if (state.getLocation() != null) {
+			journal.recordLocation(player.getUsername(), state.getLocation());
+		}
+		for (int i = 0; i < state.getScore(); i++) {
+			journal.recordScore(player.getUsername());
+		}
+		if (state.isEliminated()) {
+			journal.recordEliminated(player.getUsername());
+		}
+	}
+
+
+	private void pullPlayerIfHeldElsewhere(String username) {
+		if (cluster.isEnabled() && !mapUsernameToPlayer.containsKey(username)) {
+			ClusterNode.Handover handover = cluster.pullPlayer(arenaId, username);
+			if (handover != null) {
+				adoptPlayer(handover.getPlayer());
+				cluster.confirmHandover(arenaId, handover);
+			}
+		}
+	}
+
+
+	public void handleUpdateLocationRequest(UpdateLocationRequest request) {
+		if (cluster.isEnabled() && !cluster.ownsLocation(request.getLongitude())) {
+			cluster.forwardUpdate(arenaId, request);
+			return;
+		}
+		handleLocalUpdateLocationRequest(request);
+	}
+
+
+	public void handleLocalUpdateLocationRequest(UpdateLocationRequest request) {
+		pullPlayerIfHeldElsewhere(request.getUsername());
+		if (tickLoop != null) {
+			tickLoop.execute(request);
+			return;
+		}
+		execute(updateLocationCommand(request));
+	}
+
+
+	public void handleUpdateLocationRequestAsync(final UpdateLocationRequest request, GameCallback<Void> callback) {
+		if (cluster.isEnabled()) {
+			completeNow(new Callable<Void>() {
+				@Override
+				public Void call() {
+					handleUpdateLocationRequest(request);
+					return null;
+				}
+			}, callback);
+			return;
+		}
+		if (tickLoop != null) {
+			tickLoop.submit(request, callback);
+			return;
+		}
+		executeAsync(updateLocationCommand(request), callback);
+	}
+
+
+	private Callable<Void> updateLocationCommand(final UpdateLocationRequest request) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() {
+				applyUpdateLocationRequest(request);
+				return null;
+			}
+		};
+	}
+
+
+	private void applyUpdateLocationRequest(UpdateLocationRequest request) {
+		String username = request.getUsername();
+		double latitude = request.getLatitude();
+		double longitude = request.getLongitude();
+
+		System.out.println("***** [UPDATE] ***** Received a location update request from " + username + " @ " + latitude + "  " + longitude);
+
+		Player updatingPlayer = mapUsernameToPlayer.get(username);
+		if (updatingPlayer == null) {
+			System.out.println("WARNING Updating location for player who doesn't exist. Ignoring.");
+			return;
+		}
+
+		Location location = new Location(latitude, longitude);
+		updatePlayerLocation(updatingPlayer, location);
+
+		// The player may have left while their location was being updated, in which case
+		// make sure they aren't left behind in the grid.
+		if (mapUsernameToPlayer.get(username) != updatingPlayer) {
+			System.out.println("WARNING Updated location for player who has left the game. Ignoring.");
+			playerIndex.remove(updatingPlayer, location);
+			return;
+		}
+
+		List<Player> playersInRange = findPlayersInRange(updatingPlayer);
+		if (playersInRange.size() > 0) {
+			enqueueActivityIntel(new IntelResponse(MessageGenerator.generateCloseEncounterMessage(updatingPlayer, playersInRange), true));
 		}
 	}
 
 
 	public AttackResponse handleAttackRequest(AttackRequest request) {
-		lock.lock();
-		try {
-			String attackingPlayerUsername = request.getUsername();
-			double latitude = request.getLatitude();
-			double longitude = request.getLongitude();
+		if (cluster.isEnabled() && !cluster.ownsLocation(request.getLongitude())) {
+			return cluster.forwardAttack(arenaId, request);
+		}
+		return handleLocalAttackRequest(request);
+	}
+
+
+	public AttackResponse handleLocalAttackRequest(AttackRequest request) {
+		pullPlayerIfHeldElsewhere(request.getUsername());
+		if (tickLoop != null) {
+			return tickLoop.execute(request);
+		}
+		return execute(attackCommand(request));
+	}
+
+
+	public void handleAttackRequestAsync(final AttackRequest request, GameCallback<AttackResponse> callback) {
+		if (cluster.isEnabled()) {
+			completeNow(new Callable<AttackResponse>() {
+				@Override
+				public AttackResponse call() {
+					return handleAttackRequest(request);
+				}
+			}, callback);
+			return;
+		}
+		if (tickLoop != null) {
+			tickLoop.submit(request, callback);
+			return;
+		}
+		executeAsync(attackCommand(request), callback);
+	}
 
-			System.out.println("***** [ATTACK] ***** Received an attack from: " + attackingPlayerUsername + " @ " + latitude + " | " + longitude);
 
-			// If the player doesn't exist return a response that the request was invalid.
-			if (!mapUsernameToPlayer.containsKey(attackingPlayerUsername)) {
-				System.out.println("WARNING No such user has joined the game. Returning invalid request response.");
+	private Callable<AttackResponse> attackCommand(final AttackRequest request) {
+		return new Callable<AttackResponse>() {
+			@Override
+			public AttackResponse call() {
+				return applyAttackRequest(request);
+			}
+		};
+	}
+
+
+	private AttackResponse applyAttackRequest(AttackRequest request) {
+		String attackingPlayerUsername = request.getUsername();
+		double latitude = request.getLatitude();
+		double longitude = request.getLongitude();
+
+		System.out.println("***** [ATTACK] ***** Received an attack from: " + attackingPlayerUsername + " @ " + latitude + " | " + longitude);
+
+		// If the player doesn't exist return a response that the request was invalid.
+		Player attackingPlayer = mapUsernameToPlayer.get(attackingPlayerUsername);
+		if (attackingPlayer == null) {
+			System.out.println("WARNING No such user has joined the game. Returning invalid request response.");
+			return new AttackResponse(INVALID_REQUEST, null, null, null, null);
+		}
+
+		Location location = new Location(latitude, longitude);
+		int[] lockedStripes = lockRegionAround(attackingPlayer, location);
+		try {
+			// The player may have left while we were waiting for the lock.
+			if (mapUsernameToPlayer.get(attackingPlayerUsername) != attackingPlayer) {
+				System.out.println("WARNING Attacker has left the game. Returning invalid request response.");
 				return new AttackResponse(INVALID_REQUEST, null, null, null, null);
 			}
 
 			// Update the attacker's location.
-			Player attackingPlayer = mapUsernameToPlayer.get(attackingPlayerUsername);
-			attackingPlayer.setLocation(new Location(latitude, longitude));
+			updatePlayerLocation(attackingPlayer, location);
 			System.out.println("INFO Updated attacker's location to: " + attackingPlayer.getLocation());
 
 			// If the player is eliminated from the game then they shouldn't be having a turn.
@@ -192,56 +820,170 @@ public final class Game {
 				return new AttackResponse(INVALID_REQUEST, null, null, null, null);
 			}
 
-			// It's a valid attack request, so increment the number of turns taken.
-			totalTurnsTaken++;
+			while (true) {
+				// Find the players in range of the attacking player.
+				List<Player> playersInRange = findPlayersInRange(attackingPlayer);
+
+				// Resolve the attack based on the number of players in range:
+				// o Exactly 1 player in range -> The attacker has eliminated the other player from the game.
+				// o >1 player in range -> The attacker was outgunned and eliminated from the game by the other players.
+				// o 0 players in range -> The attacker has missed as there was nobody to hit.
+				//
+				// Players can move into range without taking a lock so another attack elsewhere may
+				// eliminate them first. Elimination is a compare-and-set so if we lose that race the
+				// players in range are found again.
+				if (playersInRange.size() == 1) {
+					if (playersInRange.get(0).eliminate()) {
+						playerIndex.markEliminated(playersInRange.get(0));
+						return resolveHit(attackingPlayer, playersInRange.get(0), true);
+					}
+				} else if (playersInRange.size() == 2) {
+					if (attackingPlayer.eliminate()) {
+						playerIndex.markEliminated(attackingPlayer);
+						return resolveOutgunned(attackingPlayer, playersInRange, true);
+					}
+					System.out.println("WARNING Attacker was eliminated by another attack. Returning invalid request response.");
+					return new AttackResponse(INVALID_REQUEST, null, null, null, null);
+				} else {
+					return resolveMiss(attackingPlayer);
+				}
+			}
+		} finally {
+			regionLocks.unlock(lockedStripes);
+		}
+	}
+
 
-			// Find the players in range of the attacking player.
-			List<Player> playersInRange = findPlayersInRange(attackingPlayer);
+	/**
+	 * Resolves the attacks and location updates which arrived during a tick:
+	 * o Everyone's location is updated in the order the requests arrived.
+	 * o A snapshot is taken of the active players' positions and every attack is checked against it, so
+	 *   near simultaneous shots all count, e.g. two players who shoot each other are both eliminated.
+	 * o The outcome of each attack is then applied in the order the attacks arrived.
+	 * The whole tick is resolved under the membership lock and a lock of the whole field.
+	 */
+	private void resolveTick(List<TickLoop.Action<?>> actions) {
+		membershipLock.lock();
+		int[] lockedStripes = regionLocks.lockAll();
+		try {
+			// Move everyone, and work out which attacks are valid before anyone is eliminated.
+			List<TickLoop.Action<?>> attacks = new ArrayList<TickLoop.Action<?>>();
+			List<Player> attackers = new ArrayList<Player>();
+			List<Player> updatingPlayers = new ArrayList<Player>();
+			for (TickLoop.Action<?> action : actions) {
+				GameActionRequest request = action.getRequest();
+				Player player = mapUsernameToPlayer.get(request.getUsername());
+				if (player == null) {
+					System.out.println("WARNING No such user has joined the game. Ignoring their " + (request instanceof AttackRequest ? "attack." : "location update."));
+					action.setResult(request instanceof AttackRequest ? new AttackResponse(INVALID_REQUEST, null, null, null, null) : null);
+					continue;
+				}
+				updatePlayerLocation(player, new Location(request.getLatitude(), request.getLongitude()));
+
+				if (!(request instanceof AttackRequest)) {
+					updatingPlayers.add(player);
+				} else if (player.isEliminated()) {
+					System.out.println("WARNING Attacker '" + player.getUsername() + "' is eliminated. Returning invalid request response.");
+					action.setResult(new AttackResponse(INVALID_REQUEST, null, null, null, null));
+				} else {
+					attacks.add(action);
+					attackers.add(player);
+				}
+			}
 
-			// Resolve the attack based on the number of players in range:
-			// o Exactly 1 player in range -> The attacker has eliminated the other player from the game.
-			// o >1 player in range -> The attacker was outgunned and eliminated from the game by the other players.
-			// o 0 players in range -> The attacker has missed as there was nobody to hit.
-			switch (playersInRange.size()) {
-			case 1:
-				return resolveHit(attackingPlayer, playersInRange.get(0));
-			case 2:
-				return resolveOutgunned(attackingPlayer, playersInRange);
-			default:
-				return resolveMiss(attackingPlayer);
+			// One pass over the positions at the end of the tick finds who is in range of every attack.
+			TickSnapshot snapshot = new TickSnapshot(mapUsernameToPlayer.values(), ATTACK_RADIUS_METERS);
+			List<List<Player>> playersInRangeOfAttacks = new ArrayList<List<Player>>(attacks.size());
+			for (int i = 0; i < attacks.size(); i++) {
+				GameActionRequest request = attacks.get(i).getRequest();
+				Location attackLocation = new Location(request.getLatitude(), request.getLongitude());
+				List<Player> playersInRange = snapshot.findPlayersInRange(attackLocation, request.getUsername());
+				if (cluster.isEnabled()) {
+					playersInRange.addAll(cluster.findRemotePlayersInRange(arenaId, attackLocation, ATTACK_RADIUS_METERS, request.getUsername()));
+				}
+				playersInRangeOfAttacks.add(playersInRange);
+			}
+
+			// Apply the outcomes with the same rules as attacks resolved one at a time. Every attack in
+			// the tick counts, so a player can be hit by two attackers or be outgunned after being hit,
+			// but they're only counted as eliminated once.
+			for (int i = 0; i < attacks.size(); i++) {
+				Player attackingPlayer = attackers.get(i);
+				List<Player> playersInRange = playersInRangeOfAttacks.get(i);
+				if (playersInRange.size() == 1) {
+					boolean isEliminated = playersInRange.get(0).eliminate();
+					if (isEliminated) {
+						playerIndex.markEliminated(playersInRange.get(0));
+					}
+					attacks.get(i).setResult(resolveHit(attackingPlayer, playersInRange.get(0), isEliminated));
+				} else if (playersInRange.size() == 2) {
+					boolean isEliminated = attackingPlayer.eliminate();
+					if (isEliminated) {
+						playerIndex.markEliminated(attackingPlayer);
+					}
+					attacks.get(i).setResult(resolveOutgunned(attackingPlayer, playersInRange, isEliminated));
+				} else {
+					attacks.get(i).setResult(resolveMiss(attackingPlayer));
+				}
+			}
+
+			for (Player updatingPlayer : updatingPlayers) {
+				List<Player> playersInRange = snapshot.findPlayersInRange(updatingPlayer.getLocation(), updatingPlayer.getUsername());
+				if (playersInRange.size() > 0) {
+					enqueueActivityIntel(new IntelResponse(MessageGenerator.generateCloseEncounterMessage(updatingPlayer, playersInRange), true));
+				}
 			}
 		} finally {
-			lock.unlock();
+			regionLocks.unlock(lockedStripes);
+			membershipLock.unlock();
 		}
 	}
 
 
 	public JoinResponse handleIDRequest(JoinGameRequest request) {
-		lock.lock();
-		try {
-			System.out.println("INFO ***** ID REQUEST RECEIVED *****");
-			Player player = mapUsernameToPlayer.get(request.getUsername());
-			if (player != null) {
-				System.out.println("INFO An existing player was found for username '" + request.getUsername() + "', their generated name is '" + player.getGeneratedName() + "'. Returning player's identity.");
-				return new JoinResponse(player.getIdentity());
-			} else {
-				System.out.println("INFO No player exists for username '" + request.getUsername() + "'. Returning null.");
-				return new JoinResponse(null);
+		JoinResponse response = handleLocalIDRequest(request);
+		if (response.getPlayerIdentity() == null && cluster.isEnabled()) {
+			PlayerIdentity identity = cluster.lookupIdentity(arenaId, request.getUsername());
+			if (identity != null) {
+				return new JoinResponse(identity);
 			}
-		} finally {
-			lock.unlock();
 		}
+		return response;
 	}
 
 
-	private AttackResponse resolveHit(Player attackingPlayer, Player participantPlayer) {
-		// Get the player who's been eliminated from the game and update their state.
-		participantPlayer.eliminate();
+	public JoinResponse handleLocalIDRequest(JoinGameRequest request) {
+		System.out.println("INFO ***** ID REQUEST RECEIVED *****");
+		Player player = mapUsernameToPlayer.get(request.getUsername());
+		if (player != null) {
+			System.out.println("INFO An existing player was found for username '" + request.getUsername() + "', their generated name is '" + player.getGeneratedName() + "'. Returning player's identity.");
+			return new JoinResponse(player.getIdentity());
+		} else {
+			System.out.println("INFO No player exists for username '" + request.getUsername() + "'. Returning null.");
+			return new JoinResponse(null);
+		}
+	}
+
+
+	/**
+	 * isEliminated is whether this attack is the one which eliminated the participant, rather than
+	 * another in the same tick, so the game's total only counts each player once.
+	 */
+	private AttackResponse resolveHit(Player attackingPlayer, Player participantPlayer, boolean isEliminated) {
+		// A turn is counted with each outcome rather than up front, as replay counts turns from the outcomes journaled.
+		totalTurnsTaken.incrementAndGet();
+
+		// The participant has already been eliminated from the game so update the attacker's state.
 		attackingPlayer.incrementScore();
-		totalScore++;
+		if (isEliminated) {
+			totalScore.incrementAndGet();
+		}
 
-		Event event = new PlayerHitEvent(attackingPlayer, participantPlayer);
+		PlayerHitEvent event = new PlayerHitEvent(attackingPlayer, participantPlayer);
 		timeline.addEvent(event);
+		if (journal != null) {
+			journal.recordHit(attackingPlayer.getIdentity(), event.getLocation(), participantPlayer.getIdentity(), event.getTimeOccurred());
+		}
 
 		// The attack response expects a list of participant (i.e. not the attacker) player identities.
 		List<PlayerIdentity> playerList = new ArrayList<PlayerIdentity>(1);
@@ -251,16 +993,19 @@ public final class Game {
 	}
 
 
-	private AttackResponse resolveOutgunned(Player attackingPlayer, List<Player> playersInRange) {
-		// The attacking player is outgunned and thus eliminated from the game.
-		attackingPlayer.eliminate();
+	private AttackResponse resolveOutgunned(Player attackingPlayer, List<Player> playersInRange, boolean isEliminated) {
+		totalTurnsTaken.incrementAndGet();
+
+		// The attacking player has already been eliminated from the game for being outgunned.
 		// Increment the total score for the game and for each player which outgunned the attacker.
-		totalScore++;
+		if (isEliminated) {
+			totalScore.incrementAndGet();
+		}
 		for (Player player : playersInRange) {
 			player.incrementScore();
 		}
 
-		Event event = new PlayerOutgunnedEvent(attackingPlayer, playersInRange);
+		PlayerOutgunnedEvent event = new PlayerOutgunnedEvent(attackingPlayer, playersInRange);
 		timeline.addEvent(event);
 
 		System.out.println("+++ [OUTGUNNED] +++ " + MessageGenerator.generateAttackerMessage(event));
@@ -268,70 +1013,423 @@ public final class Game {
 		for (Player playerInRange : playersInRange) {
 			playersInRangeIdentities.add(playerInRange.getIdentity());
 		}
+		if (journal != null) {
+			journal.recordOutgunned(attackingPlayer.getIdentity(), event.getLocation(), playersInRangeIdentities, event.getTimeOccurred());
+		}
 		return new AttackResponse(OUTGUNNED, attackingPlayer.getIdentity(), MessageGenerator.generateAttackerMessage(event), playersInRangeIdentities, MessageGenerator.generateParticipantMessage(event));
 	}
 
 
 	private AttackResponse resolveMiss(Player attackingPlayer) {
-		Event event = new PlayerMissEvent(attackingPlayer);
+		totalTurnsTaken.incrementAndGet();
+
+		PlayerMissEvent event = new PlayerMissEvent(attackingPlayer);
 		timeline.addEvent(event);
+		if (journal != null) {
+			journal.recordMiss(attackingPlayer.getIdentity(), event.getLocation(), event.getTimeOccurred());
+		}
 		System.out.println("+++ [MISS] +++ " + MessageGenerator.generateAttackerMessage(event));
 		return new AttackResponse(MISS, attackingPlayer.getIdentity(), MessageGenerator.generateAttackerMessage(event), null, null);
 	}
 
 
-	public IntelResponse handleIntelRequest() {
-		lock.lock();
+	/**
+	 * Applies the actions in order as if they'd been sent one at a time, but with the whole batch applied
+	 * as a single command (or under a single lock of the whole field) rather than one per action.
+	 *
+	 * In tick mode the attacks and location updates go through the tick loop like any others, behind
+	 * those already waiting for the tick, rather than being applied straight away ahead of them.
+	 */
+	public List<BatchItemResponse> handleBatchRequest(final List<BatchItem> items) {
+		if (cluster.isEnabled()) {
+			// Each action may belong to a different server so they're routed one at a time.
+			List<BatchItemResponse> responses = new ArrayList<BatchItemResponse>(items.size());
+			for (BatchItem item : items) {
+				responses.add(handleBatchItem(item));
+			}
+			return responses;
+		}
+		if (tickLoop != null) {
+			return handleTickBatchRequest(items);
+		}
+		return execute(new Callable<List<BatchItemResponse>>() {
+			@Override
+			public List<BatchItemResponse> call() {
+				return applyBatchRequest(items);
+			}
+		});
+	}
+
+
+	private List<BatchItemResponse> applyBatchRequest(List<BatchItem> items) {
+		System.out.println("***** [BATCH] ***** Received a batch of " + items.size() + " actions.");
+		membershipLock.lock();
+		int[] lockedStripes = regionLocks.lockAll();
 		try {
-			System.out.println("***** [INTEL] ***** Request recieved.");
+			// The locks are reentrant so each action taking its own locks doesn't block.
+			List<BatchItemResponse> responses = new ArrayList<BatchItemResponse>(items.size());
+			for (BatchItem item : items) {
+				responses.add(applyBatchItem(item));
+			}
+			return responses;
+		} finally {
+			regionLocks.unlock(lockedStripes);
+			membershipLock.unlock();
+		}
+	}
 
-			// Return game activity intel in preference to game stats as it's
-			// likely to be more exciting for the players.
-			if (activityIntel.size() > 0) {
-				return activityIntel.poll();
+
+	/**
+	 * Queues each run of attacks and location updates for the tick loop together and waits for it to be
+	 * resolved. Joins and leaves aren't resolved in ticks, so each is applied once everything before it
+	 * in the batch has been, which keeps the batch in order.
+	 */
+	private List<BatchItemResponse> handleTickBatchRequest(List<BatchItem> items) {
+		System.out.println("***** [BATCH] ***** Received a batch of " + items.size() + " actions for the tick loop.");
+		List<BatchItemResponse> responses = new ArrayList<BatchItemResponse>(items.size());
+		List<BatchItem> tickItems = new ArrayList<BatchItem>();
+		List<GameActionRequest> tickRequests = new ArrayList<GameActionRequest>();
+		for (BatchItem item : items) {
+			String type = item.getType();
+			if (BatchItem.TYPE_UPDATE.equals(type)) {
+				tickItems.add(item);
+				tickRequests.add(new UpdateLocationRequest(item.getUsername(), item.getLatitude(), item.getLongitude()));
+			} else if (BatchItem.TYPE_ATTACK.equals(type)) {
+				tickItems.add(item);
+				tickRequests.add(new AttackRequest(item.getUsername(), item.getLatitude(), item.getLongitude()));
 			} else {
-				switch (random.nextInt(GAME_INTEL_ENTRY_COUNT)) {
-				case 0:
-					return new IntelResponse(MessageGenerator.generatePlayersInGameMessage(mapUsernameToPlayer.size()), false);
-				case 1:
-					return new IntelResponse(MessageGenerator.generateTurnsTakenMessage(totalTurnsTaken), false);
-				case 2:
-					return new IntelResponse(MessageGenerator.generatePlayersEliminatedMessage(totalScore), false);
-				default:
-					return null;
-				}
+				resolveTickBatchItems(tickItems, tickRequests, responses);
+				responses.add(handleBatchItem(item));
 			}
-		} finally {
-			lock.unlock();
 		}
+		resolveTickBatchItems(tickItems, tickRequests, responses);
+		return responses;
+	}
+
+
+	private void resolveTickBatchItems(List<BatchItem> tickItems, List<GameActionRequest> tickRequests, List<BatchItemResponse> responses) {
+		if (tickRequests.isEmpty()) {
+			return;
+		}
+		List<Object> results = tickLoop.executeAll(tickRequests);
+		for (int i = 0; i < tickItems.size(); i++) {
+			String type = tickItems.get(i).getType();
+			AttackResponse attackResponse = BatchItem.TYPE_ATTACK.equals(type) ? (AttackResponse) results.get(i) : null;
+			responses.add(new BatchItemResponse(type, null, attackResponse));
+		}
+		tickItems.clear();
+		tickRequests.clear();
+	}
+
+
+	private BatchItemResponse applyBatchItem(BatchItem item) {
+		String type = item.getType();
+		if (BatchItem.TYPE_JOIN.equals(type)) {
+			return new BatchItemResponse(type, applyJoinGameRequest(new JoinGameRequest(item.getUsername())), null);
+		} else if (BatchItem.TYPE_LEAVE.equals(type)) {
+			applyLeaveGameRequest(new LeaveGameRequest(item.getUsername()));
+		} else if (BatchItem.TYPE_UPDATE.equals(type)) {
+			applyUpdateLocationRequest(new UpdateLocationRequest(item.getUsername(), item.getLatitude(), item.getLongitude()));
+		} else if (BatchItem.TYPE_ATTACK.equals(type)) {
+			return new BatchItemResponse(type, null, applyAttackRequest(new AttackRequest(item.getUsername(), item.getLatitude(), item.getLongitude())));
+		} else {
+			System.out.println("WARNING Unknown batch action type '" + type + "'. Ignoring.");
+		}
+		return new BatchItemResponse(type, null, null);
+	}
+
+
+	private BatchItemResponse handleBatchItem(BatchItem item) {
+		String type = item.getType();
+		if (BatchItem.TYPE_JOIN.equals(type)) {
+			return new BatchItemResponse(type, handleJoinGameRequest(new JoinGameRequest(item.getUsername())), null);
+		} else if (BatchItem.TYPE_LEAVE.equals(type)) {
+			handleLeaveGameRequest(new LeaveGameRequest(item.getUsername()));
+		} else if (BatchItem.TYPE_UPDATE.equals(type)) {
+			handleUpdateLocationRequest(new UpdateLocationRequest(item.getUsername(), item.getLatitude(), item.getLongitude()));
+		} else if (BatchItem.TYPE_ATTACK.equals(type)) {
+			return new BatchItemResponse(type, null, handleAttackRequest(new AttackRequest(item.getUsername(), item.getLatitude(), item.getLongitude())));
+		} else {
+			System.out.println("WARNING Unknown batch action type '" + type + "'. Ignoring.");
+		}
+		return new BatchItemResponse(type, null, null);
+	}
+
+
+	/**
+	 * Returns whether the consumer is one of those configured to read intel. Requests from any other
+	 * consumer get only game statistics, so the endpoints reject them first.
+	 */
+	public boolean isIntelConsumer(String consumer) {
+		return IntelFeed.isConsumer(consumer);
+	}
+
+
+	/**
+	 * Returns the consumer's next item of activity intel, or a game statistic when they've had it all.
+	 * Intel is read from the IntelFeed on the calling thread, without going through the game thread
+	 * or taking a lock, in every engine.
+	 */
+	public IntelResponse handleIntelRequest(String consumer) {
+		return applyIntelRequest(consumer);
+	}
+
+
+	public void handleIntelRequestAsync(final String consumer, GameCallback<IntelResponse> callback) {
+		completeNow(new Callable<IntelResponse>() {
+			@Override
+			public IntelResponse call() {
+				return applyIntelRequest(consumer);
+			}
+		}, callback);
+	}
+
+
+	private IntelResponse applyIntelRequest(String consumer) {
+		System.out.println("***** [INTEL] ***** Request recieved from '" + consumer + "'.");
+
+		// Return game activity intel in preference to game stats as it's
+		// likely to be more exciting for the players.
+		IntelResponse intel = activityIntel.next(consumer);
+		if (intel != null) {
+			return intel;
+		} else {
+			switch (random.nextInt(GAME_INTEL_ENTRY_COUNT)) {
+			case 0:
+				return new IntelResponse(MessageGenerator.generatePlayersInGameMessage(mapUsernameToPlayer.size()), false);
+			case 1:
+				return new IntelResponse(MessageGenerator.generateTurnsTakenMessage(totalTurnsTaken.get()), false);
+			case 2:
+				return new IntelResponse(MessageGenerator.generatePlayersEliminatedMessage(totalScore.get()), false);
+			default:
+				return null;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the version of the map data, which changes whenever getMapData() would return something
+	 * different. It's read without taking a lock or looking at the map, so checking whether a client's
+	 * copy of the map is still current costs next to nothing.
+	 */
+	public String getMapVersion(boolean isOmniscient) {
+		long players = playersVersion.get();
+		Timeline currentTimeline = timeline;
+		String version = Long.toHexString(currentTimeline.getId()) + "." + currentTimeline.getVersion(isOmniscient);
+		return isOmniscient ? version + "." + players : version;
 	}
 
 
 	public List<MapPoint> getMapData(boolean isOmniscient) {
-		lock.lock();
-		try {
-			if (isOmniscient) {
-				List<MapPoint> mapData = new ArrayList<MapPoint>();
-				mapData.addAll(timeline.getRealtimeMapData());
-				// Add the players' latest locations to the map.
-				for (Map.Entry<String, Player> entryUsernameToPlayer : mapUsernameToPlayer.entrySet()) {
-					long locationUpdateTime = entryUsernameToPlayer.getValue().getLocation().getUpdatedTimeMillis();
-					Location location = entryUsernameToPlayer.getValue().getLocation();
-					mapData.add(new MapPoint(EventType.LOCATION_UPDATE, locationUpdateTime, location, entryUsernameToPlayer.getValue().getIdentity(), null, null));
+		if (isOmniscient) {
+			List<MapPoint> mapData = new ArrayList<MapPoint>();
+			mapData.addAll(timeline.getRealtimeMapData());
+			addPlayerLocations(mapData);
+			return mapData;
+		} else {
+			return timeline.getDelayedMapData();
+		}
+	}
+
+
+	/**
+	 * Returns only the map data for events since the cursor. The omniscient view also includes every
+	 * player's latest location, as those are replaced rather than added to.
+	 */
+	public MapDelta getMapDataSince(boolean isOmniscient, long cursor) {
+		if (isOmniscient) {
+			MapDelta mapDelta = timeline.getRealtimeMapDataSince(cursor);
+			List<MapPoint> mapData = new ArrayList<MapPoint>(mapDelta.getMapPoints());
+			addPlayerLocations(mapData);
+			return new MapDelta(mapDelta.getCursor(), mapData);
+		} else {
+			return timeline.getDelayedMapDataSince(cursor);
+		}
+	}
+
+
+	/**
+	 * Returns about how many map points writing the map data would write now, counting each player in
+	 * the omniscient view whether or not they have a location yet. The timeline's views are counted
+	 * without looking at their events, so this is cheap enough to ask before every response.
+	 */
+	public int getMapPointCount(boolean isOmniscient, Long cursor) {
+		int count;
+		if (cursor != null) {
+			MapDelta mapDelta = isOmniscient ? timeline.getRealtimeMapDataSince(cursor) : timeline.getDelayedMapDataSince(cursor);
+			count = mapDelta.getMapPoints().size();
+		} else {
+			count = (isOmniscient ? timeline.getRealtimeMapData() : timeline.getDelayedMapData()).size();
+		}
+		return isOmniscient ? count + mapUsernameToPlayer.size() : count;
+	}
+
+
+	/**
+	 * Writes the map data as JSON straight to the stream, the same as getMapData() would return or
+	 * getMapDataSince() when there's a cursor, without building a list of the whole map first. The map
+	 * points come from a snapshot of the timeline, already serialized, and players' locations are
+	 * written as they're read.
+	 */
+	public void writeMapData(boolean isOmniscient, Long cursor, OutputStream out) throws IOException {
+		MapJsonWriter writer = new MapJsonWriter(out);
+		List<MapPoint> mapData;
+		if (cursor != null) {
+			MapDelta mapDelta = isOmniscient ? timeline.getRealtimeMapDataSince(cursor) : timeline.getDelayedMapDataSince(cursor);
+			writer.startDelta(mapDelta.getCursor());
+			mapData = mapDelta.getMapPoints();
+		} else {
+			writer.startList();
+			mapData = isOmniscient ? timeline.getRealtimeMapData() : timeline.getDelayedMapData();
+		}
+
+		Timeline.writeMapPoints(mapData, writer);
+		if (isOmniscient) {
+			for (Player player : mapUsernameToPlayer.values()) {
+				Location location = player.getLocation();
+				if (location != null) {
+					writer.writePlayerLocation(player.getIdentity(), location);
 				}
-				return mapData;
-			} else {
-				return timeline.getDelayedMapData();
 			}
-		} finally {
-			lock.unlock();
 		}
+
+		if (cursor != null) {
+			writer.endDelta();
+		} else {
+			writer.endList();
+		}
+		writer.flush();
 	}
 
 
-	private List<Player> findPlayersInRange(Player attackingPlayer) {
+	/**
+	 * Writes the map data in the compact binary form, the same as writeMapData() writes as JSON.
+	 */
+	public void writeBinaryMapData(boolean isOmniscient, Long cursor, OutputStream out) throws IOException {
+		writeMapDataByIdentityIndex(isOmniscient, cursor, out, true);
+	}
 
-		List<Player> playersInRange = new ArrayList<Player>();
+
+	/**
+	 * Writes the map data as JSON with each player identity written once in a dictionary, which the
+	 * map points refer to by index.
+	 */
+	public void writeDictionaryMapData(boolean isOmniscient, Long cursor, OutputStream out) throws IOException {
+		writeMapDataByIdentityIndex(isOmniscient, cursor, out, false);
+	}
+
+
+	/**
+	 * Both forms which refer to identities by index need them all up front, so players' locations are
+	 * gathered before writing rather than written as they're read.
+	 */
+	private void writeMapDataByIdentityIndex(boolean isOmniscient, Long cursor, OutputStream out, boolean isBinary) throws IOException {
+		List<MapPoint> mapData;
+		List<MapPoint> playerLocations = new ArrayList<MapPoint>();
+		if (cursor != null) {
+			MapDelta mapDelta = isOmniscient ? timeline.getRealtimeMapDataSince(cursor) : timeline.getDelayedMapDataSince(cursor);
+			cursor = mapDelta.getCursor();
+			mapData = mapDelta.getMapPoints();
+		} else {
+			mapData = isOmniscient ? timeline.getRealtimeMapData() : timeline.getDelayedMapData();
+		}
+		if (isOmniscient) {
+			addPlayerLocations(playerLocations);
+		}
+		if (isBinary) {
+			new MapBinaryWriter(out).writeMapData(cursor, mapData, playerLocations);
+		} else {
+			new MapJsonWriter(out).writeDictionaryMapData(cursor, mapData, playerLocations);
+		}
+	}
+
+
+	/**
+	 * Returns the events in the timeline which match the query, as they happened rather than delayed.
+	 */
+	public List<MapPoint> queryTimeline(TimelineQuery query) {
+		return timeline.query(query);
+	}
+
+
+	/**
+	 * Returns a tile of the heatmap of events, as they happened rather than delayed, or null if there's
+	 * no heatmap at the zoom level.
+	 */
+	public HeatmapTile getHeatmapTile(int zoom, int x, int y, int minutes) {
+		return timeline.getHeatmapTile(zoom, x, y, minutes);
+	}
+
+
+	/**
+	 * Returns the counts of the events which were too old to keep on the timeline.
+	 */
+	public MapRollup getMapRollup() {
+		return timeline.getRollup();
+	}
+
+
+	private void addPlayerLocations(List<MapPoint> mapData) {
+		// Add the players' latest locations to the map.
+		for (Map.Entry<String, Player> entryUsernameToPlayer : mapUsernameToPlayer.entrySet()) {
+			Location location = entryUsernameToPlayer.getValue().getLocation();
+			// Skip players who've joined but not reported a location yet.
+			if (location == null) {
+				continue;
+			}
+			mapData.add(new MapPoint(EventType.LOCATION_UPDATE, location.getUpdatedTimeMillis(), location, entryUsernameToPlayer.getValue().getIdentity(), null, null));
+		}
+	}
+
+
+	/**
+	 * Locks the region which could be affected by the player acting at the given location, which
+	 * includes the cell they are currently in as they will be moved out of it. With no location the
+	 * region around the player's current location is locked (or the whole field if they don't have one).
+	 */
+	private int[] lockRegionAround(Player player, Location location) {
+		if (!regionLocks.isStriped()) {
+			return regionLocks.lockAll();
+		}
+		while (true) {
+			Location currentLocation = player.getLocation();
+			Location regionCentre = location != null ? location : currentLocation;
+
+			Collection<Long> cellKeys = regionCentre != null ? playerGrid.cellKeysNear(regionCentre) : null;
+			if (cellKeys != null && currentLocation != null) {
+				cellKeys.add(playerGrid.cellKeyOf(currentLocation));
+			}
+			int[] lockedStripes = regionLocks.lock(cellKeys);
+
+			// Another request from the same player may have moved them while we were waiting,
+			// in which case their current cell might not be locked so try again.
+			if (player.getLocation() == currentLocation) {
+				return lockedStripes;
+			}
+			regionLocks.unlock(lockedStripes);
+		}
+	}
+
+
+	private void updatePlayerLocation(Player player, Location location) {
+		Location oldLocation = player.setLocation(location);
+		playersVersion.incrementAndGet();
+		playerIndex.move(player, oldLocation, location);
+		if (journal != null) {
+			journal.recordLocation(player.getUsername(), location);
+		}
+
+		// Another update from the same player may have moved them on again while the grid was
+		// being updated, so make sure they're indexed wherever they are now.
+		Location currentLocation = player.getLocation();
+		if (currentLocation != location) {
+			playerIndex.add(player, currentLocation);
+		}
+	}
+
+
+	private List<Player> findPlayersInRange(Player attackingPlayer) {
 
 		// Get the location of the player in question.
 		Location attackerLocation = attackingPlayer.getLocation();
@@ -341,25 +1439,51 @@ public final class Game {
 			return new ArrayList<Player>(0);
 		}
 
-		// Iterate over the players in game and build a list of player usernames for players
+		List<Player> playersInRange = findLocalPlayersInRange(attackerLocation, attackingPlayer.getUsername());
+
+		// Near the edge of this server's part of the field there may be players in range on its neighbours.
+		if (cluster.isEnabled()) {
+			playersInRange.addAll(cluster.findRemotePlayersInRange(arenaId, attackerLocation, ATTACK_RADIUS_METERS, attackingPlayer.getUsername()));
+		}
+		return playersInRange;
+	}
+
+
+	/**
+	 * Finds the players held by this server who are in range of the location, apart from the given player.
+	 */
+	public List<Player> findLocalPlayersInRange(Location attackerLocation, String attackingPlayerUsername) {
+
+		List<Player> playersInRange = new ArrayList<Player>();
+
+		// Iterate over the players near the attacking player and build a list of the players
 		// who are in range of the attacking player.
-		for (Map.Entry<String, Player> usernameToPlayer : mapUsernameToPlayer.entrySet()) {
-			String playerUsername = usernameToPlayer.getKey();
+		for (Player candidatePlayer : playerIndex.findCandidatesNear(attackerLocation)) {
+			String playerUsername = candidatePlayer.getUsername();
 
 			// A player cannot be in range of themselves, so skip that player.
-			if (playerUsername.equals(attackingPlayer.getUsername())) {
+			if (playerUsername.equals(attackingPlayerUsername)) {
 				System.out.println("INFO Skipping range finding between primary username and themself.");
 				continue;
 			}
 
+			// Skip players who left the game while a location update was in progress.
+			if (mapUsernameToPlayer.get(playerUsername) != candidatePlayer) {
+				System.out.println("INFO Skipping '" + playerUsername + "' because that player has left the game.");
+				continue;
+			}
+
+			// Take a snapshot of the other player so their location and elimination are consistent.
+			PlayerState candidateState = candidatePlayer.getState();
+
 			// Skip range finding on the other player if they have already been eliminated from the game.
-			if (usernameToPlayer.getValue().isEliminated()) {
+			if (candidateState.isEliminated()) {
 				System.out.println("INFO Skipping '" + playerUsername + "' because that player has already been eliminated from the game.");
 				continue;
 			}
 
 			// Get the location of the other player.
-			Location playerLocation = usernameToPlayer.getValue().getLocation();
+			Location playerLocation = candidateState.getLocation();
 			System.out.println("INFO Player '" + playerUsername + "' found at location: " + playerLocation);
 
 			// Skip range finding on the other player if their location is null (as it can be when joining the game).
@@ -375,7 +1499,7 @@ public final class Game {
 			// If the player in range, add their username to the list.
 			if (distanceBetweenPlayers < ATTACK_RADIUS_METERS) {
 				System.out.println("INFO Player '" + playerUsername + "' is in range. Their distance from the primary username is within the range radius of " + ATTACK_RADIUS_METERS + " meters.");
-				playersInRange.add(usernameToPlayer.getValue());
+				playersInRange.add(candidatePlayer);
 			} else {
 				System.out.println("INFO Player '" + playerUsername + "' is NOT in range. Their distance from the primary username is outside the range radius of " + ATTACK_RADIUS_METERS + " meters.");
 			}
@@ -385,33 +1509,95 @@ public final class Game {
 	}
 
 
-	private void enqueueActivityIntel(IntelResponse intelResponse) {
-		// Pop the oldest bit of intel off the queue if it's full before trying
-		// to add the new entry.
-		if (activityIntel.size() == ACTIVITY_INTEL_QUEUE_SIZE) {
-			activityIntel.poll();
+	/**
+	 * Eliminates a player held by this server on behalf of an attack resolved by another server,
+	 * returning false if they aren't held here or had already been eliminated.
+	 *
+	 * The other server holds its region locks while it waits for this, so taking this server's region
+	 * locks here could leave two servers attacking across a border waiting on each other. Instead it
+	 * only holds out checkpoints, so a checkpoint can't include the change without its journal record.
+	 */
+	public boolean eliminateLocalPlayer(String username) {
+		checkpointLock.readLock().lock();
+		try {
+			Player player = mapUsernameToPlayer.get(username);
+			if (player == null || !player.eliminate()) {
+				return false;
+			}
+			playerIndex.markEliminated(player);
+			if (journal != null) {
+				journal.recordEliminated(username);
+			}
+			return true;
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Credits a player held by this server on behalf of another server, locked like eliminateLocalPlayer().
+	 */
+	public void incrementLocalScore(String username) {
+		checkpointLock.readLock().lock();
+		try {
+			Player player = mapUsernameToPlayer.get(username);
+			if (player != null) {
+				player.incrementScore();
+				if (journal != null) {
+					journal.recordScore(username);
+				}
+			}
+		} finally {
+			checkpointLock.readLock().unlock();
 		}
-		activityIntel.offer(intelResponse);
+	}
+
+
+	private void enqueueActivityIntel(IntelResponse intelResponse) {
+		// The oldest bit of intel is overwritten once the feed is full.
+		activityIntel.publish(intelResponse);
 	}
 
 
 	public String reset() {
-		lock.lock();
+		return execute(new Callable<String>() {
+			@Override
+			public String call() {
+				return applyReset();
+			}
+		});
+	}
+
+
+	private String applyReset() {
+		membershipLock.lock();
+		int[] lockedStripes = regionLocks.lockAll();
 		try {
 			System.out.println("***** [RESET] ***** Request recieved.");
 
-			Demo.getInstance().reset();
+			// The demo only ever plays in the default arena.
+			if (DEFAULT_ARENA.equals(arenaId)) {
+				Demo.getInstance().reset();
+			}
 
 			mapUsernameToPlayer.clear();
-			activityIntel.clear();
+			mapUsernameToReleasedPlayer.clear();
+			activityIntel = new IntelFeed(ACTIVITY_INTEL_RING_SIZE);
 			nameGenerator = new NameGenerator();
-			timeline = new Timeline();
-			totalTurnsTaken = 0;
-			totalScore = 0;
+			timeline = timeline.successor();
+			playerIndex.clear();
+			totalTurnsTaken.set(0);
+			totalScore.set(0);
+			playersVersion.incrementAndGet();
+			if (journal != null) {
+				journal.clear();
+			}
 
 			return "Game state has been reset.";
 		} finally {
-			lock.unlock();
+			regionLocks.unlock(lockedStripes);
+			membershipLock.unlock();
 		}
 	}
 
@@ -420,4 +1606,113 @@ public final class Game {
 		return Demo.getInstance().doNextStep();
 	}
 
+	/**
+	 * Rebuilds the game from the journal at startup, before the game is open to requests.
+	 *
+	 * Outcomes are applied without finding who was in range again, and the events are recreated with the
+	 * time they originally occurred. Players in an outcome who aren't held here (they're on another server
+	 * in the cluster) only appear in the event, their own server journaled what happened to them.
+	 */
+	private final class JournalReplayer implements Journal.Replayer {
+
+		@Override
+		public void join(PlayerIdentity identity) {
+			if (!mapUsernameToPlayer.containsKey(identity.getUsername())) {
+				nameGenerator.reserveIdentity(identity);
+				mapUsernameToPlayer.put(identity.getUsername(), new Player(identity));
+			}
+		}
+
+
+		@Override
+		public void leave(String username) {
+			removePlayer(username);
+		}
+
+
+		@Override
+		public void location(String username, Location location) {
+			Player player = mapUsernameToPlayer.get(username);
+			if (player != null) {
+				updatePlayerLocation(player, location);
+			}
+		}
+
+
+		@Override
+		public void hit(PlayerIdentity attackerIdentity, Location location, long timeOccurred, PlayerIdentity victimIdentity) {
+			Player attackingPlayer = playerAt(attackerIdentity, location);
+			Player victim = heldPlayer(victimIdentity);
+			// A victim held here who was already eliminated was hit by two attackers in the same tick,
+			// and was only counted the first time.
+			boolean isHeld = mapUsernameToPlayer.containsKey(victimIdentity.getUsername());
+			boolean isEliminated = eliminateLocalPlayer(victimIdentity.getUsername());
+			incrementLocalScore(attackerIdentity.getUsername());
+			totalTurnsTaken.incrementAndGet();
+			if (isEliminated || !isHeld) {
+				totalScore.incrementAndGet();
+			}
+			addReplayedEvent(new PlayerHitEvent(attackingPlayer, victim), timeOccurred);
+		}
+
+
+		@Override
+		public void outgunned(PlayerIdentity attackerIdentity, Location location, long timeOccurred, List<PlayerIdentity> outgunnerIdentities) {
+			Player attackingPlayer = playerAt(attackerIdentity, location);
+			List<Player> outgunners = new ArrayList<Player>(outgunnerIdentities.size());
+			for (PlayerIdentity outgunnerIdentity : outgunnerIdentities) {
+				outgunners.add(heldPlayer(outgunnerIdentity));
+				incrementLocalScore(outgunnerIdentity.getUsername());
+			}
+			boolean isEliminated = eliminateLocalPlayer(attackerIdentity.getUsername());
+			totalTurnsTaken.incrementAndGet();
+			if (isEliminated) {
+				totalScore.incrementAndGet();
+			}
+			addReplayedEvent(new PlayerOutgunnedEvent(attackingPlayer, outgunners), timeOccurred);
+		}
+
+
+		@Override
+		public void miss(PlayerIdentity attackerIdentity, Location location, long timeOccurred) {
+			totalTurnsTaken.incrementAndGet();
+			addReplayedEvent(new PlayerMissEvent(playerAt(attackerIdentity, location)), timeOccurred);
+		}
+
+
+		@Override
+		public void eliminated(String username) {
+			eliminateLocalPlayer(username);
+		}
+
+
+		@Override
+		public void score(String username) {
+			incrementLocalScore(username);
+		}
+
+
+		private Player heldPlayer(PlayerIdentity identity) {
+			Player player = mapUsernameToPlayer.get(identity.getUsername());
+			return player != null ? player : new Player(identity);
+		}
+
+
+		/**
+		 * The events take the attacker's location when they're created, so they're created from a
+		 * stand-in for the attacker where they were at the time.
+		 */
+		private Player playerAt(PlayerIdentity identity, Location location) {
+			Player player = new Player(identity);
+			player.setLocation(location);
+			return player;
+		}
+
+
+		private void addReplayedEvent(Event event, long timeOccurred) {
+			event.setTimeOccurred(timeOccurred);
+			timeline.addEvent(event);
+		}
+	}
+
 }
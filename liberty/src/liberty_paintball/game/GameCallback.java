@@ -0,0 +1,17 @@
+package liberty_paintball.game;
+
+/**
+ * @author Dave Waddling
+ *
+ * Receives the result of a game action submitted asynchronously, once the game has applied it.
+ * It's called on whichever thread applied the action so it shouldn't block.
+ *
+ */
+public interface GameCallback<T> {
+
+	void completed(T result);
+
+
+	void failed(Throwable failure);
+
+}
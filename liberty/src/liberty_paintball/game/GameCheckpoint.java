@@ -0,0 +1,355 @@
+package liberty_paintball.game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import liberty_paintball.game.events.Event;
+import liberty_paintball.game.events.Event.EventType;
+import liberty_paintball.game.events.PlayerHitEvent;
+import liberty_paintball.game.events.PlayerMissEvent;
+import liberty_paintball.game.events.PlayerOutgunnedEvent;
+import liberty_paintball.journal.Journal;
+import liberty_paintball.mapping.MapPoint;
+
+/**
+ * @author Dave Waddling
+ *
+ * The whole state of a Game at one position in its Journal, written to disk in a compact binary form
+ * so a restart only has to replay the journal from that position. Every player identity is written once,
+ * in a table at the start, and the players and events refer to it by index, as the same few identities
+ * come up in most of the events.
+ *
+ * A checkpoint is captured while the game is locked, which only copies references: player states are
+ * immutable and the timeline is captured as a snapshot. Writing it out happens afterwards, without
+ * holding up the game.
+ *
+ */
+final class GameCheckpoint {
+
+	// "LPCK"
+	private static final int				MAGIC		= 0x4c50434b;
+
+	private static final int				VERSION		= 1;
+
+	private static final EventType[]		EVENT_TYPES	= EventType.values();
+
+	private final Journal.Position			journalPosition;
+	private final List<PlayerIdentity>		identities;
+	private final List<PlayerState>			states;
+	private final Map<String, String>		freeNames;
+	private final int						totalTurnsTaken;
+	private final int						totalScore;
+	// A captured checkpoint has the timeline's checkpoint, one which has been read has the timeline.
+	private final Timeline.Checkpoint		timelineCheckpoint;
+	private final Timeline					timeline;
+
+
+	/**
+	 * Captures a checkpoint. The caller must make sure the game doesn't change while it's captured.
+	 */
+	GameCheckpoint(Journal.Position journalPosition, Iterable<Player> players, Map<String, String> freeNames, int totalTurnsTaken, int totalScore, Timeline.Checkpoint timelineCheckpoint) {
+		this.journalPosition = journalPosition;
+		this.identities = new ArrayList<PlayerIdentity>();
+		this.states = new ArrayList<PlayerState>();
+		for (Player player : players) {
+			identities.add(player.getIdentity());
+			states.add(player.getState());
+		}
+		this.freeNames = freeNames;
+		this.totalTurnsTaken = totalTurnsTaken;
+		this.totalScore = totalScore;
+		this.timelineCheckpoint = timelineCheckpoint;
+		this.timeline = null;
+	}
+
+
+	private GameCheckpoint(Journal.Position journalPosition, List<PlayerIdentity> identities, List<PlayerState> states, Map<String, String> freeNames, int totalTurnsTaken, int totalScore, Timeline timeline) {
+		this.journalPosition = journalPosition;
+		this.identities = identities;
+		this.states = states;
+		this.freeNames = freeNames;
+		this.totalTurnsTaken = totalTurnsTaken;
+		this.totalScore = totalScore;
+		this.timelineCheckpoint = null;
+		this.timeline = timeline;
+	}
+
+
+	Journal.Position getJournalPosition() {
+		return journalPosition;
+	}
+
+
+	List<Player> getPlayers() {
+		List<Player> players = new ArrayList<Player>(identities.size());
+		for (int i = 0; i < identities.size(); i++) {
+			players.add(new Player(identities.get(i), states.get(i)));
+		}
+		return players;
+	}
+
+
+	Map<String, String> getFreeNames() {
+		return freeNames;
+	}
+
+
+	int getTotalTurnsTaken() {
+		return totalTurnsTaken;
+	}
+
+
+	int getTotalScore() {
+		return totalScore;
+	}
+
+
+	Timeline getTimeline() {
+		return timeline;
+	}
+
+
+	void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(journalPosition.getSegmentNumber());
+			out.writeInt(journalPosition.getOffset());
+			out.writeInt(totalTurnsTaken);
+			out.writeInt(totalScore);
+
+			List<Event> timelineEvents = timelineCheckpoint.getEvents();
+			List<MapPoint> mapPoints = new ArrayList<MapPoint>(timelineEvents.size());
+			IdentityTable identityTable = new IdentityTable();
+			for (PlayerIdentity identity : identities) {
+				identityTable.add(identity);
+			}
+			for (Event event : timelineEvents) {
+				MapPoint mapPoint = event.toMapPoint();
+				identityTable.add(mapPoint.getAttackerIdentity());
+				if (mapPoint.getParticipantIdentities() != null) {
+					for (PlayerIdentity participantIdentity : mapPoint.getParticipantIdentities()) {
+						identityTable.add(participantIdentity);
+					}
+				}
+				mapPoints.add(mapPoint);
+			}
+			out.writeInt(identityTable.identities.size());
+			for (PlayerIdentity identity : identityTable.identities) {
+				writeIdentity(out, identity);
+			}
+
+			out.writeInt(identities.size());
+			for (int i = 0; i < identities.size(); i++) {
+				PlayerState state = states.get(i);
+				out.writeInt(identityTable.indexOf(identities.get(i)));
+				writeLocation(out, state.getLocation());
+				out.writeInt(state.getScore());
+				out.writeBoolean(state.isEliminated());
+			}
+
+			out.writeInt(freeNames.size());
+			for (Map.Entry<String, String> entryNameToHexColor : freeNames.entrySet()) {
+				out.writeUTF(entryNameToHexColor.getKey());
+				out.writeUTF(entryNameToHexColor.getValue());
+			}
+
+			out.writeLong(timelineCheckpoint.getId());
+			out.writeLong(timelineCheckpoint.getFirstSequence());
+			out.writeInt(mapPoints.size());
+			for (MapPoint mapPoint : mapPoints) {
+				writeMapPoint(out, mapPoint, identityTable);
+			}
+			timelineCheckpoint.getRollup().writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+
+	static GameCheckpoint read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a version " + VERSION + " checkpoint: " + file);
+			}
+			Journal.Position journalPosition = new Journal.Position(in.readLong(), in.readInt());
+			int totalTurnsTaken = in.readInt();
+			int totalScore = in.readInt();
+
+			PlayerIdentity[] identityTable = new PlayerIdentity[in.readInt()];
+			for (int i = 0; i < identityTable.length; i++) {
+				identityTable[i] = readIdentity(in);
+			}
+
+			int playerCount = in.readInt();
+			List<PlayerIdentity> identities = new ArrayList<PlayerIdentity>(playerCount);
+			List<PlayerState> states = new ArrayList<PlayerState>(playerCount);
+			for (int i = 0; i < playerCount; i++) {
+				identities.add(readIdentity(in, identityTable));
+				states.add(PlayerState.of(readLocation(in), in.readInt(), in.readBoolean()));
+			}
+
+			int freeNameCount = in.readInt();
+			Map<String, String> freeNames = new HashMap<String, String>(freeNameCount * 2);
+			for (int i = 0; i < freeNameCount; i++) {
+				freeNames.put(in.readUTF(), in.readUTF());
+			}
+
+			long timelineId = in.readLong();
+			long firstSequence = in.readLong();
+			int eventCount = in.readInt();
+			List<Event> events = new ArrayList<Event>(eventCount);
+			for (int i = 0; i < eventCount; i++) {
+				events.add(readEvent(in, identityTable));
+			}
+			Timeline timeline = new Timeline(timelineId, firstSequence, TimelineRollup.readFrom(in));
+			timeline.addRestoredEvents(events);
+
+			return new GameCheckpoint(journalPosition, identities, states, freeNames, totalTurnsTaken, totalScore, timeline);
+		} finally {
+			in.close();
+		}
+	}
+
+
+	private static void writeMapPoint(DataOutputStream out, MapPoint mapPoint, IdentityTable identityTable) throws IOException {
+		out.writeByte(mapPoint.getType().ordinal());
+		out.writeLong(mapPoint.getTimeOccurred());
+		writeLocation(out, mapPoint.getLocation());
+		out.writeInt(identityTable.indexOf(mapPoint.getAttackerIdentity()));
+		PlayerIdentity[] participantIdentities = mapPoint.getParticipantIdentities();
+		out.writeInt(participantIdentities == null ? 0 : participantIdentities.length);
+		if (participantIdentities != null) {
+			for (PlayerIdentity participantIdentity : participantIdentities) {
+				out.writeInt(identityTable.indexOf(participantIdentity));
+			}
+		}
+	}
+
+
+	/**
+	 * Recreates an event from its map point. The events only use the players for their identities and
+	 * the attacker's location, so stand-ins are created for them.
+	 */
+	private static Event readEvent(DataInputStream in, PlayerIdentity[] identityTable) throws IOException {
+		EventType type = EVENT_TYPES[in.readByte()];
+		long timeOccurred = in.readLong();
+		Location location = readLocation(in);
+		Player attacker = new Player(readIdentity(in, identityTable), PlayerState.of(location, 0, false));
+		int participantCount = in.readInt();
+		List<Player> participants = new ArrayList<Player>(participantCount);
+		for (int i = 0; i < participantCount; i++) {
+			participants.add(new Player(readIdentity(in, identityTable)));
+		}
+
+		Event event;
+		switch (type) {
+		case PLAYER_HIT:
+			event = new PlayerHitEvent(attacker, participants.get(0));
+			break;
+		case PLAYER_OUTGUNNED:
+			event = new PlayerOutgunnedEvent(attacker, participants);
+			break;
+		case PLAYER_MISS:
+			event = new PlayerMissEvent(attacker);
+			break;
+		default:
+			throw new IOException("Unexpected event type in checkpoint: " + type);
+		}
+		event.setTimeOccurred(timeOccurred);
+		return event;
+	}
+
+
+	private static void writeIdentity(DataOutputStream out, PlayerIdentity identity) throws IOException {
+		out.writeUTF(identity.getUsername());
+		out.writeUTF(identity.getGeneratedName());
+		out.writeUTF(identity.getColorAsHexString());
+	}
+
+
+	private static PlayerIdentity readIdentity(DataInputStream in) throws IOException {
+		return new PlayerIdentity(in.readUTF(), in.readUTF(), in.readUTF());
+	}
+
+
+	/**
+	 * Reads an identity's index into the table.
+	 */
+	private static PlayerIdentity readIdentity(DataInputStream in, PlayerIdentity[] identityTable) throws IOException {
+		int index = in.readInt();
+		if (index < 0 || index >= identityTable.length) {
+			throw new IOException("Identity " + index + " isn't in the checkpoint's table of " + identityTable.length + ".");
+		}
+		return identityTable[index];
+	}
+
+
+	private static void writeLocation(DataOutputStream out, Location location) throws IOException {
+		out.writeBoolean(location != null);
+		if (location != null) {
+			out.writeDouble(location.getLatitude());
+			out.writeDouble(location.getLongitude());
+			out.writeLong(location.getUpdatedTimeMillis());
+		}
+	}
+
+
+	private static Location readLocation(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		Location location = new Location(in.readDouble(), in.readDouble());
+		location.setUpdatedTimeMillis(in.readLong());
+		return location;
+	}
+
+	/**
+	 * The identities written to a checkpoint, each once. Identities are told apart by all of their
+	 * fields, as a username can be taken again with a new name and color once its player has left.
+	 */
+	private static final class IdentityTable {
+
+		private final List<PlayerIdentity>	identities;
+		private final Map<String, Integer>	indexes;
+
+
+		private IdentityTable() {
+			identities = new ArrayList<PlayerIdentity>();
+			indexes = new HashMap<String, Integer>();
+		}
+
+
+		private void add(PlayerIdentity identity) {
+			String key = keyOf(identity);
+			if (!indexes.containsKey(key)) {
+				indexes.put(key, identities.size());
+				identities.add(identity);
+			}
+		}
+
+
+		private int indexOf(PlayerIdentity identity) {
+			return indexes.get(keyOf(identity));
+		}
+
+
+		private static String keyOf(PlayerIdentity identity) {
+			// The username goes last as it's the only one which could have a newline in it.
+			return identity.getGeneratedName() + '\n' + identity.getColorAsHexString() + '\n' + identity.getUsername();
+		}
+	}
+
+}
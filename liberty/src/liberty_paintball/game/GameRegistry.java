@@ -0,0 +1,72 @@
+package liberty_paintball.game;
+
+import static liberty_paintball.Config.ARENAS_PROPERTY;
+import static liberty_paintball.Config.DEFAULT_ARENA;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Dave Waddling
+ * 
+ * The GameRegistry is a singleton which holds an independent Game for each arena the server hosts, so
+ * several events can run on one server. Each arena has its own players, names, timeline and locks (and
+ * its own game thread in single writer mode) so a busy arena can't hold up any of the others.
+ * 
+ * The arenas are fixed at startup with -Dliberty_paintball.arenas=<id>,<id>,... and the default arena
+ * always exists for clients which don't name one.
+ *
+ */
+public final class GameRegistry {
+
+	private static GameRegistry	instance	= null;
+
+
+	public static synchronized GameRegistry getInstance() {
+		if (instance == null) {
+			instance = new GameRegistry();
+		}
+		return instance;
+	}
+
+	// Never modified after construction so it can be read without locking.
+	private final Map<String, Game>	mapArenaIdToGame;
+
+
+	private GameRegistry() {
+		Map<String, Game> arenas = new LinkedHashMap<String, Game>();
+		arenas.put(DEFAULT_ARENA, new Game(DEFAULT_ARENA));
+
+		String configuredArenas = System.getProperty(ARENAS_PROPERTY, "");
+		for (String arenaId : configuredArenas.split(",")) {
+			arenaId = arenaId.trim();
+			if (arenaId.length() > 0 && !arenas.containsKey(arenaId)) {
+				arenas.put(arenaId, new Game(arenaId));
+			}
+		}
+
+		mapArenaIdToGame = Collections.unmodifiableMap(arenas);
+		System.out.println("INFO Hosting arenas: " + mapArenaIdToGame.keySet());
+	}
+
+
+	/**
+	 * Returns the game for the arena or null if the server doesn't host an arena with that id.
+	 */
+	public Game getArena(String arenaId) {
+		return mapArenaIdToGame.get(arenaId);
+	}
+
+
+	public Game getDefaultArena() {
+		return mapArenaIdToGame.get(DEFAULT_ARENA);
+	}
+
+
+	public Set<String> getArenaIds() {
+		return mapArenaIdToGame.keySet();
+	}
+
+}
@@ -0,0 +1,143 @@
+package liberty_paintball.game;
+
+import static liberty_paintball.Config.DEFAULT_INTEL_CONSUMER;
+import static liberty_paintball.Config.DEFAULT_INTEL_CONSUMERS;
+import static liberty_paintball.Config.INTEL_CONSUMERS_PROPERTY;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import liberty_paintball.json.responses.IntelResponse;
+
+/**
+ * @author Dave Waddling
+ *
+ * A bounded ring of the latest activity intel which any number of consumers read with a cursor of
+ * their own, so each of them gets every item still in the ring rather than the first to ask taking it.
+ * Once the ring is full the oldest item is overwritten, and a consumer which has fallen behind skips
+ * to the oldest item left.
+ *
+ * Neither publishing nor reading takes a lock. A publisher claims the next sequence number and then
+ * stores the item in its slot along with that number, so a reader can tell whether a slot holds the item
+ * it's after, one which hasn't been stored yet, or a newer one which has overwritten it. A consumer's
+ * cursor is only moved on with compare-and-set, so requests from the same consumer at the same time
+ * never get the same item.
+ *
+ * Only the default consumer and those configured at startup have a cursor, each created along with the
+ * feed, so requests naming made up consumers can't add cursors.
+ *
+ */
+final class IntelFeed {
+
+	private static final Set<String>				CONSUMERS	= configuredConsumers();
+
+	private final AtomicReferenceArray<Slot>		slots;
+	private final AtomicLong						nextSequence;
+	// Never changed once the feed is created, so it's read without a lock.
+	private final Map<String, AtomicLong>			cursors;
+
+
+	IntelFeed(int capacity) {
+		slots = new AtomicReferenceArray<Slot>(capacity);
+		nextSequence = new AtomicLong();
+		cursors = new HashMap<String, AtomicLong>();
+		for (String consumer : CONSUMERS) {
+			cursors.put(consumer, new AtomicLong());
+		}
+	}
+
+
+	static boolean isConsumer(String consumer) {
+		return CONSUMERS.contains(consumer);
+	}
+
+
+	void publish(IntelResponse intel) {
+		long sequence = nextSequence.getAndIncrement();
+		Slot slot = new Slot(sequence, intel);
+		int index = indexOf(sequence);
+
+		// A publisher which was held up mustn't overwrite a newer item stored in the meantime.
+		Slot current;
+		do {
+			current = slots.get(index);
+			if (current != null && current.sequence > sequence) {
+				return;
+			}
+		} while (!slots.compareAndSet(index, current, slot));
+	}
+
+
+	/**
+	 * Returns the consumer's next item of intel and moves their cursor past it, or null when they've
+	 * read everything published so far or aren't one of the configured consumers.
+	 */
+	IntelResponse next(String consumer) {
+		AtomicLong cursor = cursors.get(consumer);
+		if (cursor == null) {
+			return null;
+		}
+		while (true) {
+			long current = cursor.get();
+			long end = nextSequence.get();
+			for (long sequence = Math.max(current, end - slots.length()); sequence < end; sequence++) {
+				Slot slot = slots.get(indexOf(sequence));
+				if (slot == null || slot.sequence < sequence) {
+					// Claimed but not stored yet, and the items after it are read in order.
+					return null;
+				}
+				if (slot.sequence == sequence) {
+					if (cursor.compareAndSet(current, sequence + 1)) {
+						return slot.intel;
+					}
+					// Another request from the same consumer read it first, so start again from its cursor.
+					break;
+				}
+				// Overwritten already, so carry on with the next one.
+			}
+			if (cursor.get() == current) {
+				return null;
+			}
+		}
+	}
+
+
+	private static Set<String> configuredConsumers() {
+		Set<String> consumers = new LinkedHashSet<String>();
+		consumers.add(DEFAULT_INTEL_CONSUMER);
+		for (String consumer : System.getProperty(INTEL_CONSUMERS_PROPERTY, DEFAULT_INTEL_CONSUMERS).split(",")) {
+			consumer = consumer.trim();
+			if (consumer.length() > 0) {
+				consumers.add(consumer);
+			}
+		}
+		System.out.println("INFO Serving intel to the consumers: " + consumers);
+		return Collections.unmodifiableSet(consumers);
+	}
+
+
+	private int indexOf(long sequence) {
+		return (int) (sequence % slots.length());
+	}
+
+	/**
+	 * An item of intel with the sequence number it was published as.
+	 */
+	private static final class Slot {
+
+		private final long			sequence;
+		private final IntelResponse	intel;
+
+
+		private Slot(long sequence, IntelResponse intel) {
+			this.sequence = sequence;
+			this.intel = intel;
+		}
+	}
+
+}
@@ -15,7 +15,7 @@ import static java.lang.Math.toRadians;
  */
 public class Location {
 
-	private static final double	EARTH_RADIUS_METERS	= 6371100;
+	static final double			EARTH_RADIUS_METERS	= 6371100;
 
 	private double				latitude;
 	private double				longitude;
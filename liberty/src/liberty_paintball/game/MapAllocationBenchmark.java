@@ -0,0 +1,115 @@
+package liberty_paintball.game;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import liberty_paintball.json.requests.AttackRequest;
+import liberty_paintball.json.requests.JoinGameRequest;
+import liberty_paintball.json.requests.UpdateLocationRequest;
+import liberty_paintball.mapping.MapJsonWriter;
+import liberty_paintball.mapping.MapPoint;
+
+/**
+ * @author Dave Waddling
+ *
+ * Measures how much one request for the omniscient map allocates with 100k events in the timeline, when
+ * it's streamed by Game.writeMapData() and when the map is built as a list first, the way the endpoints
+ * returned it before it was streamed. It isn't used by the server itself.
+ *
+ * The list is measured on its own, as the JSON provider serialized it separately, and again with
+ * MapJsonWriter serializing it in place of the provider. The responses are written to a stream which
+ * throws them away, so only what making them allocates is counted. Allocation is read from the JVM's
+ * per thread counters, so it needs a JVM with com.sun.management. Run it with the application's classes
+ * on the class path:
+ *
+ *   java -cp <classes> liberty_paintball.game.MapAllocationBenchmark [events]
+ *
+ */
+public final class MapAllocationBenchmark {
+
+	private static final int	PLAYERS			= 1000;
+
+	private static final double	LATITUDE		= 51.5d;
+	private static final double	LONGITUDE		= -0.1d;
+
+	// About a kilometre between players, so every attack misses and adds one event.
+	private static final double	SPACING_DEGREES	= 0.01d;
+
+	private static final int	WARM_UP_ROUNDS	= 5;
+
+
+	private MapAllocationBenchmark() {
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		int eventCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+			System.out.println("WARNING This JVM doesn't count the memory each thread allocates.");
+			System.exit(1);
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		long threadId = Thread.currentThread().getId();
+
+		// The game logs every request, which would be counted too, so it's quiet while it's played.
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new DiscardingStream()));
+		Game game = new Game("allocation-benchmark");
+		for (int i = 0; i < PLAYERS; i++) {
+			game.handleJoinGameRequest(new JoinGameRequest("player" + i));
+			game.handleUpdateLocationRequest(new UpdateLocationRequest("player" + i, LATITUDE + i * SPACING_DEGREES, LONGITUDE));
+		}
+		for (int i = 0; i < eventCount; i++) {
+			int player = i % PLAYERS;
+			game.handleAttackRequest(new AttackRequest("player" + player, LATITUDE + player * SPACING_DEGREES, LONGITUDE));
+		}
+		int mapPointCount = game.getMapData(true).size();
+
+		long[] allocated = new long[3];
+		for (int round = 0; round <= WARM_UP_ROUNDS; round++) {
+			// Only the last round is counted, once the JIT has settled.
+			long startBytes = allocations.getThreadAllocatedBytes(threadId);
+			game.writeMapData(true, null, new DiscardingStream());
+			allocated[0] = allocations.getThreadAllocatedBytes(threadId) - startBytes;
+
+			startBytes = allocations.getThreadAllocatedBytes(threadId);
+			List<MapPoint> mapData = game.getMapData(true);
+			allocated[1] = allocations.getThreadAllocatedBytes(threadId) - startBytes;
+
+			MapJsonWriter writer = new MapJsonWriter(new DiscardingStream());
+			writer.startList();
+			writer.writeMapPoints(mapData);
+			writer.endList();
+			writer.flush();
+			allocated[2] = allocations.getThreadAllocatedBytes(threadId) - startBytes;
+		}
+		System.setOut(out);
+
+		System.out.println("INFO Allocated by one request for the omniscient map of " + mapPointCount + " map points (" + eventCount + " events):");
+		System.out.println(String.format("  streamed                     %,12d bytes  %6.1f bytes per map point", allocated[0], (double) allocated[0] / mapPointCount));
+		System.out.println(String.format("  list built                   %,12d bytes  %6.1f bytes per map point", allocated[1], (double) allocated[1] / mapPointCount));
+		System.out.println(String.format("  list built and serialized    %,12d bytes  %6.1f bytes per map point", allocated[2], (double) allocated[2] / mapPointCount));
+		System.exit(0);
+	}
+
+	/**
+	 * Throws away whatever is written to it.
+	 */
+	private static final class DiscardingStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+		}
+
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+
+}
@@ -111,4 +111,33 @@ public class NameGenerator {
 		return new PlayerIdentity(username, name, hexColor);
 	}
 
+
+	/**
+	 * Returns the names still free, with their colors, e.g. for a checkpoint.
+	 */
+	public synchronized Map<String, String> getFreeNames() {
+		return new HashMap<String, String>(mapNameToHexColor);
+	}
+
+
+	/**
+	 * Leaves only the given names free, for a game restored from a checkpoint.
+	 */
+	public synchronized void restoreFreeNames(Map<String, String> freeNames) {
+		names.clear();
+		names.addAll(freeNames.keySet());
+		mapNameToHexColor.clear();
+		mapNameToHexColor.putAll(freeNames);
+	}
+
+
+	/**
+	 * Takes an identity's name out of those still free, for identities given out before a restart.
+	 */
+	public synchronized void reserveIdentity(PlayerIdentity identity) {
+		if (mapNameToHexColor.remove(identity.getGeneratedName()) != null) {
+			names.remove(identity.getGeneratedName());
+		}
+	}
+
 }
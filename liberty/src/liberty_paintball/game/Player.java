@@ -1,5 +1,7 @@
 package liberty_paintball.game;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * 
  * @author Dave Waddling
@@ -7,21 +9,26 @@ package liberty_paintball.game;
  * A player in Liberty Paintball is primarily composed of an identity, location and whether
  * or not they've been eliminated. Score is also tracked but currently unused as there's no
  * end condition to the game.
+ * 
+ * Everything but the identity is held in an immutable PlayerState which is replaced using
+ * compare-and-set, so location updates never have to wait for a lock and readers always see
+ * a consistent snapshot of the player.
  *
  */
 public class Player {
 
-	private PlayerIdentity	identity;
-	private Location		location;
-	private int				score;
-	private boolean			isEliminated;
+	private PlayerIdentity					identity;
+	private AtomicReference<PlayerState>	state;
 
 
 	public Player(PlayerIdentity identity) {
+		this(identity, PlayerState.INITIAL_STATE);
+	}
+
+
+	public Player(PlayerIdentity identity, PlayerState state) {
 		this.identity = identity;
-		this.score = 0;
-		this.location = null;
-		this.isEliminated = false;
+		this.state = new AtomicReference<PlayerState>(state);
 	}
 
 
@@ -45,33 +52,58 @@ public class Player {
 	}
 
 
+	public PlayerState getState() {
+		return state.get();
+	}
+
+
 	public void incrementScore() {
-		score++;
+		PlayerState currentState;
+		do {
+			currentState = state.get();
+		} while (!state.compareAndSet(currentState, currentState.withScoreIncremented()));
 	}
 
 
 	public int getScore() {
-		return score;
+		return state.get().getScore();
 	}
 
 
-	public void setLocation(Location location) {
-		this.location = location;
+	/**
+	 * Sets the player's location and returns the location they had before.
+	 */
+	public Location setLocation(Location location) {
+		PlayerState currentState;
+		do {
+			currentState = state.get();
+		} while (!state.compareAndSet(currentState, currentState.withLocation(location)));
+		return currentState.getLocation();
 	}
 
 
 	public Location getLocation() {
-		return location;
+		return state.get().getLocation();
 	}
 
 
 	public boolean isEliminated() {
-		return isEliminated;
+		return state.get().isEliminated();
 	}
 
 
-	public void eliminate() {
-		isEliminated = true;
+	/**
+	 * Eliminates the player from the game. Returns false if they had already been eliminated.
+	 */
+	public boolean eliminate() {
+		PlayerState currentState;
+		do {
+			currentState = state.get();
+			if (currentState.isEliminated()) {
+				return false;
+			}
+		} while (!state.compareAndSet(currentState, currentState.withEliminated()));
+		return true;
 	}
 
 }
@@ -0,0 +1,211 @@
+package liberty_paintball.game;
+
+import static java.lang.Math.asin;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toDegrees;
+import static java.lang.Math.toRadians;
+import static liberty_paintball.game.Location.EARTH_RADIUS_METERS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author Dave Waddling
+ *
+ * A spatial index of players which buckets them into uniform latitude/longitude cells whose
+ * sides are the attack radius (measured along a meridian). Range finding then only needs to look
+ * at the cells which could possibly contain a player within the radius rather than every player
+ * in the game.
+ *
+ * The index only narrows down the candidates, the caller still does the exact distance check so
+ * the players found in range are the same as those found by checking every player. To keep that
+ * true the cells searched are a conservative bound, and near the poles or the antimeridian (where
+ * the bound breaks down) every indexed player is returned instead.
+ *
+ */
+public class PlayerGrid implements PlayerIndex {
+
+	// Slack applied to the search bounds so floating point rounding can never exclude a player
+	// whose calculated distance is right on the edge of the radius.
+	private static final double					BOUNDS_TOLERANCE	= 1e-9;
+
+	private final double						radiusMeters;
+	private final double						cellSizeDegrees;
+	private final ConcurrentMap<Long, Set<Player>>	cells;
+
+
+	public PlayerGrid(double radiusMeters) {
+		this.radiusMeters = radiusMeters;
+		this.cellSizeDegrees = toDegrees(radiusMeters / EARTH_RADIUS_METERS);
+		this.cells = new ConcurrentHashMap<Long, Set<Player>>();
+	}
+
+
+	@Override
+	public void add(Player player, Location location) {
+		getOrCreateCell(cellKeyOf(location)).add(player);
+	}
+
+
+	@Override
+	public void remove(Player player, Location location) {
+		if (location == null) {
+			return;
+		}
+		Set<Player> cell = cells.get(cellKeyOf(location));
+		if (cell != null) {
+			cell.remove(player);
+		}
+	}
+
+
+	@Override
+	public void move(Player player, Location oldLocation, Location newLocation) {
+		if (oldLocation != null && cellKeyOf(oldLocation) == cellKeyOf(newLocation)) {
+			return;
+		}
+		// Add to the new cell before removing from the old one so the player is never missing
+		// from the index while they move. Moves aren't locked so a player can occasionally be
+		// left in a stale cell, which is harmless as callers always check their actual location.
+		add(player, newLocation);
+		remove(player, oldLocation);
+	}
+
+
+	@Override
+	public void markEliminated(Player player) {
+		// Eliminated players stay in their cell, range finding skips them.
+	}
+
+
+	@Override
+	public void clear() {
+		cells.clear();
+	}
+
+
+	@Override
+	public Collection<Player> findCandidatesNear(Location location) {
+		Collection<Long> cellKeys = cellKeysNear(location);
+		if (cellKeys == null) {
+			return getAllPlayers();
+		}
+
+		// A player who is moving can briefly be in more than one cell so duplicates are dropped.
+		Set<Player> candidates = new LinkedHashSet<Player>();
+		for (Long cellKey : cellKeys) {
+			Set<Player> cell = cells.get(cellKey);
+			if (cell != null) {
+				candidates.addAll(cell);
+			}
+		}
+		return candidates;
+	}
+
+
+	/**
+	 * Returns the keys of every cell which could contain a point within the radius of the given
+	 * location, or null if there's no useful bound and the whole grid needs to be considered.
+	 */
+	public Collection<Long> cellKeysNear(Location location) {
+		double latitudeSpan = latitudeSpanDegrees(radiusMeters);
+		double longitudeSpan = longitudeSpanDegrees(location.getLatitude(), radiusMeters);
+
+		double latitude = location.getLatitude();
+		double longitude = location.getLongitude();
+		if (Double.isNaN(longitudeSpan) || longitude - longitudeSpan < -180.0d || longitude + longitudeSpan > 180.0d) {
+			return null;
+		}
+
+		int minLatitudeIndex = cellIndex(latitude - latitudeSpan);
+		int maxLatitudeIndex = cellIndex(latitude + latitudeSpan);
+		int minLongitudeIndex = cellIndex(longitude - longitudeSpan);
+		int maxLongitudeIndex = cellIndex(longitude + longitudeSpan);
+
+		List<Long> cellKeys = new ArrayList<Long>((maxLatitudeIndex - minLatitudeIndex + 1) * (maxLongitudeIndex - minLongitudeIndex + 1));
+		for (int latitudeIndex = minLatitudeIndex; latitudeIndex <= maxLatitudeIndex; latitudeIndex++) {
+			for (int longitudeIndex = minLongitudeIndex; longitudeIndex <= maxLongitudeIndex; longitudeIndex++) {
+				cellKeys.add(cellKey(latitudeIndex, longitudeIndex));
+			}
+		}
+		return cellKeys;
+	}
+
+
+	private Collection<Player> getAllPlayers() {
+		Set<Player> players = new LinkedHashSet<Player>();
+		for (Set<Player> cell : cells.values()) {
+			players.addAll(cell);
+		}
+		return players;
+	}
+
+
+	/**
+	 * The haversine formula gives hav(d) >= hav(deltaLatitude), so a point within the radius can be
+	 * no further away in latitude than the radius measured along a meridian.
+	 */
+	static double latitudeSpanDegrees(double radiusMeters) {
+		return toDegrees(radiusMeters / EARTH_RADIUS_METERS) * (1.0d + BOUNDS_TOLERANCE);
+	}
+
+
+	/**
+	 * The haversine formula gives hav(d) >= cos(latA) * cos(latB) * hav(deltaLongitude), so for any
+	 * point within the angular radius the longitude difference is bounded by using the smallest
+	 * cos(latB) possible within the latitude band. Returns NaN when there's no useful bound.
+	 */
+	public static double longitudeSpanDegrees(double latitude, double radiusMeters) {
+		double angularRadius = radiusMeters / EARTH_RADIUS_METERS;
+		double latitudeRadians = Math.abs(toRadians(latitude));
+		double furthestLatitudeRadians = latitudeRadians + angularRadius * (1.0d + BOUNDS_TOLERANCE);
+		if (furthestLatitudeRadians >= Math.PI / 2.0d) {
+			return Double.NaN;
+		}
+		double sinHalfSpan = sin(angularRadius / 2.0d) / sqrt(cos(latitudeRadians) * cos(furthestLatitudeRadians));
+		if (sinHalfSpan >= 1.0d) {
+			return Double.NaN;
+		}
+		return toDegrees(2.0d * asin(sinHalfSpan)) * (1.0d + BOUNDS_TOLERANCE);
+	}
+
+
+	private Set<Player> getOrCreateCell(long cellKey) {
+		Set<Player> cell = cells.get(cellKey);
+		if (cell == null) {
+			// Cells are never removed once created, even when empty, so a concurrent add can't
+			// lose a player into a discarded cell. A venue only ever covers a modest number of them.
+			Set<Player> newCell = Collections.newSetFromMap(new ConcurrentHashMap<Player, Boolean>());
+			cell = cells.putIfAbsent(cellKey, newCell);
+			if (cell == null) {
+				cell = newCell;
+			}
+		}
+		return cell;
+	}
+
+
+	public long cellKeyOf(Location location) {
+		return cellKey(cellIndex(location.getLatitude()), cellIndex(location.getLongitude()));
+	}
+
+
+	private int cellIndex(double degrees) {
+		return (int) floor(degrees / cellSizeDegrees);
+	}
+
+
+	private static long cellKey(int latitudeIndex, int longitudeIndex) {
+		return CellKeys.spread(((long) latitudeIndex << 32) | (longitudeIndex & 0xFFFFFFFFL));
+	}
+
+}
@@ -0,0 +1,36 @@
+package liberty_paintball.game;
+
+import java.util.Collection;
+
+/**
+ * @author Dave Waddling
+ * 
+ * An index of players by location which range finding uses to avoid checking the distance to every
+ * player in the game. Implementations only narrow down the candidates, the caller always does the
+ * exact distance check.
+ *
+ */
+public interface PlayerIndex {
+
+	void add(Player player, Location location);
+
+
+	void remove(Player player, Location location);
+
+
+	void move(Player player, Location oldLocation, Location newLocation);
+
+
+	void markEliminated(Player player);
+
+
+	void clear();
+
+
+	/**
+	 * Returns every indexed player who could be within the radius of the given location. It's a
+	 * superset of the players in range so callers must still check the distance to each one.
+	 */
+	Collection<Player> findCandidatesNear(Location location);
+
+}
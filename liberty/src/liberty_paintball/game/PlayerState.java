@@ -0,0 +1,64 @@
+package liberty_paintball.game;
+
+/**
+ * @author Dave Waddling
+ * 
+ * An immutable snapshot of the parts of a player which change during the game: their location, score
+ * and whether or not they've been eliminated. A Player swaps in a new snapshot whenever one of these
+ * changes so anyone reading a snapshot always sees a consistent combination of values.
+ *
+ */
+public final class PlayerState {
+
+	public static final PlayerState	INITIAL_STATE	= new PlayerState(null, 0, false);
+
+	private final Location			location;
+	private final int				score;
+	private final boolean			isEliminated;
+
+
+	private PlayerState(Location location, int score, boolean isEliminated) {
+		this.location = location;
+		this.score = score;
+		this.isEliminated = isEliminated;
+	}
+
+
+	/**
+	 * Recreates a player's state, e.g. when they're handed over from another server.
+	 */
+	public static PlayerState of(Location location, int score, boolean isEliminated) {
+		return new PlayerState(location, score, isEliminated);
+	}
+
+
+	public Location getLocation() {
+		return location;
+	}
+
+
+	public int getScore() {
+		return score;
+	}
+
+
+	public boolean isEliminated() {
+		return isEliminated;
+	}
+
+
+	public PlayerState withLocation(Location location) {
+		return new PlayerState(location, score, isEliminated);
+	}
+
+
+	public PlayerState withScoreIncremented() {
+		return new PlayerState(location, score + 1, isEliminated);
+	}
+
+
+	public PlayerState withEliminated() {
+		return new PlayerState(location, score, true);
+	}
+
+}
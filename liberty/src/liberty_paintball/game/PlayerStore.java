@@ -0,0 +1,220 @@
+package liberty_paintball.game;
+
+import static liberty_paintball.game.PlayerGrid.latitudeSpanDegrees;
+import static liberty_paintball.game.PlayerGrid.longitudeSpanDegrees;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author Dave Waddling
+ *
+ * A player index which keeps each player's latitude, longitude, elimination and last update time in
+ * parallel primitive arrays, indexed by a dense slot number handed out when the player is added.
+ * Range finding is a single pass over the arrays checking each slot against a bounding box around
+ * the location, so in big games it reads a few contiguous arrays rather than chasing pointers from
+ * Player to PlayerState to Location for every player.
+ *
+ * Slots are reused once a player leaves but never moved, so a scan can't miss a player because
+ * their slot changed underneath it. Writes are serialized by a lock (which scans never take) and
+ * published by a volatile write of the columns so any scan sees every write which completed before
+ * it began.
+ *
+ */
+public class PlayerStore implements PlayerIndex {
+
+	private static final int						INITIAL_CAPACITY	= 256;
+
+	private final double							radiusMeters;
+	private final ConcurrentMap<Player, Integer>	mapPlayerToSlot;
+	private final ReentrantLock						writeLock;
+	private final List<Integer>						freeSlots;
+	private volatile Columns						columns;
+
+
+	public PlayerStore(double radiusMeters) {
+		this.radiusMeters = radiusMeters;
+		this.mapPlayerToSlot = new ConcurrentHashMap<Player, Integer>();
+		this.writeLock = new ReentrantLock();
+		this.freeSlots = new ArrayList<Integer>();
+		this.columns = new Columns(INITIAL_CAPACITY);
+	}
+
+
+	@Override
+	public void add(Player player, Location location) {
+		writeLock.lock();
+		try {
+			Integer slot = mapPlayerToSlot.get(player);
+			if (slot == null) {
+				slot = allocateSlot();
+				mapPlayerToSlot.put(player, slot);
+			}
+			Columns current = columns;
+			current.players[slot] = player;
+			current.latitudes[slot] = location.getLatitude();
+			current.longitudes[slot] = location.getLongitude();
+			current.updatedTimesMillis[slot] = location.getUpdatedTimeMillis();
+			current.eliminated[slot] = player.isEliminated();
+			publish();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+
+	@Override
+	public void remove(Player player, Location location) {
+		writeLock.lock();
+		try {
+			Integer slot = mapPlayerToSlot.remove(player);
+			if (slot != null) {
+				columns.players[slot] = null;
+				freeSlots.add(slot);
+				publish();
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+
+	@Override
+	public void move(Player player, Location oldLocation, Location newLocation) {
+		// Always write the latest location rather than the one passed in, so updates from the same
+		// player which race each other can't leave an older location in the store.
+		add(player, player.getLocation());
+	}
+
+
+	@Override
+	public void markEliminated(Player player) {
+		writeLock.lock();
+		try {
+			Integer slot = mapPlayerToSlot.get(player);
+			if (slot != null) {
+				columns.eliminated[slot] = true;
+				publish();
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+
+	@Override
+	public void clear() {
+		writeLock.lock();
+		try {
+			mapPlayerToSlot.clear();
+			freeSlots.clear();
+			columns = new Columns(INITIAL_CAPACITY);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+
+	@Override
+	public Collection<Player> findCandidatesNear(Location location) {
+		// Reading the columns first makes every published write visible to this scan.
+		Columns current = columns;
+
+		double latitude = location.getLatitude();
+		double longitude = location.getLongitude();
+		double latitudeSpan = latitudeSpanDegrees(radiusMeters);
+		double longitudeSpan = longitudeSpanDegrees(latitude, radiusMeters);
+		// With no useful bound on longitude (near the poles or the antimeridian) only latitude is checked.
+		if (Double.isNaN(longitudeSpan) || longitude - longitudeSpan < -180.0d || longitude + longitudeSpan > 180.0d) {
+			longitudeSpan = Double.POSITIVE_INFINITY;
+		}
+
+		double[] latitudes = current.latitudes;
+		double[] longitudes = current.longitudes;
+		boolean[] eliminated = current.eliminated;
+		Player[] players = current.players;
+		int size = current.size;
+
+		List<Player> candidates = new ArrayList<Player>();
+		for (int slot = 0; slot < size; slot++) {
+			if (!eliminated[slot] && Math.abs(latitudes[slot] - latitude) <= latitudeSpan && Math.abs(longitudes[slot] - longitude) <= longitudeSpan) {
+				Player player = players[slot];
+				if (player != null) {
+					candidates.add(player);
+				}
+			}
+		}
+		return candidates;
+	}
+
+
+	public int size() {
+		return mapPlayerToSlot.size();
+	}
+
+
+	private void publish() {
+		// A volatile write, which pairs with the volatile read at the start of each scan.
+		columns = columns;
+	}
+
+
+	private int allocateSlot() {
+		if (!freeSlots.isEmpty()) {
+			return freeSlots.remove(freeSlots.size() - 1);
+		}
+
+		Columns current = columns;
+		if (current.size == current.players.length) {
+			// Scans in progress keep using the old arrays, new ones pick up the copies.
+			current = current.grow();
+			columns = current;
+		}
+		return current.size++;
+	}
+
+	/**
+	 * The arrays are replaced together when the store grows so they're held in one object which can
+	 * be swapped atomically.
+	 */
+	private static final class Columns {
+
+		private final double[]	latitudes;
+		private final double[]	longitudes;
+		private final long[]	updatedTimesMillis;
+		private final boolean[]	eliminated;
+		private final Player[]	players;
+		private int				size;
+
+
+		private Columns(int capacity) {
+			latitudes = new double[capacity];
+			longitudes = new double[capacity];
+			updatedTimesMillis = new long[capacity];
+			eliminated = new boolean[capacity];
+			players = new Player[capacity];
+			size = 0;
+		}
+
+
+		private Columns(Columns previous, int capacity) {
+			latitudes = Arrays.copyOf(previous.latitudes, capacity);
+			longitudes = Arrays.copyOf(previous.longitudes, capacity);
+			updatedTimesMillis = Arrays.copyOf(previous.updatedTimesMillis, capacity);
+			eliminated = Arrays.copyOf(previous.eliminated, capacity);
+			players = Arrays.copyOf(previous.players, capacity);
+			size = previous.size;
+		}
+
+
+		private Columns grow() {
+			return new Columns(this, players.length * 2);
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package liberty_paintball.game;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Dave Waddling
+ *
+ * Times range finding at 10k players three ways: checking every player in the game by following each
+ * one's state to its location (the object graph), scanning the PlayerStore's arrays, and looking in the
+ * PlayerGrid's cells around the attack. It isn't used by the server itself.
+ *
+ * Players are spread at random over a square of the field, once about 500 metres across and once about
+ * 5 km, and every attack is made from one of the players' locations. Run it with the application's
+ * classes on the class path:
+ *
+ *   java -cp <classes> liberty_paintball.game.RangeScanBenchmark [players] [attacks]
+ *
+ * It prints the time per attack for each and exits with 1 if they don't all find the same players.
+ *
+ */
+public final class RangeScanBenchmark {
+
+	private static final double	RADIUS_METERS		= 12.5d;
+
+	private static final double	LATITUDE			= 51.5d;
+	private static final double	LONGITUDE			= -0.1d;
+
+	private static final int[]	SPREADS_METERS		= { 500, 5000 };
+
+	private static final int	WARM_UP_ROUNDS		= 5;
+
+	// One in twenty players is eliminated, so every way has to skip some.
+	private static final int	ELIMINATED_EVERY	= 20;
+
+
+	private RangeScanBenchmark() {
+	}
+
+
+	public static void main(String[] args) {
+		int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int attackCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		boolean isMatched = true;
+		System.out.println("INFO Range finding for " + attackCount + " attacks among " + playerCount + " players:");
+		System.out.println("  spread    object graph    store           grid");
+		for (int spreadMeters : SPREADS_METERS) {
+			Random random = new Random(spreadMeters);
+			List<Player> players = new ArrayList<Player>(playerCount);
+			PlayerStore store = new PlayerStore(RADIUS_METERS);
+			PlayerGrid grid = new PlayerGrid(RADIUS_METERS);
+			double latitudeSpan = PlayerGrid.latitudeSpanDegrees(spreadMeters);
+			double longitudeSpan = PlayerGrid.longitudeSpanDegrees(LATITUDE, spreadMeters);
+			for (int i = 0; i < playerCount; i++) {
+				Player player = new Player(new PlayerIdentity("player" + i, "Player" + i, "#000000"));
+				Location location = new Location(LATITUDE + random.nextDouble() * latitudeSpan, LONGITUDE + random.nextDouble() * longitudeSpan);
+				player.setLocation(location);
+				store.add(player, location);
+				grid.add(player, location);
+				if (i % ELIMINATED_EVERY == 0) {
+					player.eliminate();
+					store.markEliminated(player);
+					grid.markEliminated(player);
+				}
+				players.add(player);
+			}
+			List<Player> attackers = new ArrayList<Player>(attackCount);
+			for (int i = 0; i < attackCount; i++) {
+				attackers.add(players.get(random.nextInt(playerCount)));
+			}
+
+			long[] found = new long[3];
+			double[] microsPerAttack = new double[3];
+			for (int round = 0; round <= WARM_UP_ROUNDS; round++) {
+				// Only the last round is timed, once the JIT has settled.
+				long startNanos = System.nanoTime();
+				found[0] = countInRange(attackers, players);
+				microsPerAttack[0] = (System.nanoTime() - startNanos) / 1000.0d / attackCount;
+				startNanos = System.nanoTime();
+				found[1] = countInRange(attackers, store);
+				microsPerAttack[1] = (System.nanoTime() - startNanos) / 1000.0d / attackCount;
+				startNanos = System.nanoTime();
+				found[2] = countInRange(attackers, grid);
+				microsPerAttack[2] = (System.nanoTime() - startNanos) / 1000.0d / attackCount;
+			}
+
+			System.out.println(String.format("  ~%-5s   %8.1f us      %8.1f us     %8.1f us", spreadMeters >= 1000 ? spreadMeters / 1000 + " km" : spreadMeters + " m", microsPerAttack[0], microsPerAttack[1], microsPerAttack[2]));
+			if (found[0] != found[1] || found[0] != found[2]) {
+				isMatched = false;
+				System.out.println("WARNING The object graph found " + found[0] + " players in range, the store " + found[1] + " and the grid " + found[2] + ".");
+			}
+		}
+
+		System.out.println(isMatched ? "INFO All three found the same players in range." : "WARNING They didn't all find the same players in range.");
+		System.exit(isMatched ? 0 : 1);
+	}
+
+
+	/**
+	 * Checks every player in the game, the way range finding did before players were indexed.
+	 */
+	private static long countInRange(List<Player> attackers, List<Player> players) {
+		long found = 0;
+		for (Player attacker : attackers) {
+			for (Player player : players) {
+				if (isInRange(attacker, player)) {
+					found++;
+				}
+			}
+		}
+		return found;
+	}
+
+
+	private static long countInRange(List<Player> attackers, PlayerIndex index) {
+		long found = 0;
+		for (Player attacker : attackers) {
+			Collection<Player> candidates = index.findCandidatesNear(attacker.getLocation());
+			for (Player candidate : candidates) {
+				if (isInRange(attacker, candidate)) {
+					found++;
+				}
+			}
+		}
+		return found;
+	}
+
+
+	/**
+	 * The same checks as Game.findLocalPlayersInRange(), without the logging.
+	 */
+	private static boolean isInRange(Player attacker, Player player) {
+		if (player == attacker) {
+			return false;
+		}
+		PlayerState state = player.getState();
+		if (state.isEliminated() || state.getLocation() == null) {
+			return false;
+		}
+		return Location.distanceBetweenLocationsMeters(attacker.getLocation(), state.getLocation()) < RADIUS_METERS;
+	}
+
+}
@@ -0,0 +1,108 @@
+package liberty_paintball.game;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author Dave Waddling
+ *
+ * A fixed set of fair locks which are striped over the cells of the PlayerGrid. An action locks
+ * only the stripes covering the cells it could affect, so actions in different parts of the
+ * field run in parallel while actions in the same area are still handled in the order they arrive.
+ *
+ * Stripes are always acquired in ascending order to avoid deadlock between actions which need
+ * overlapping sets of cells.
+ *
+ * Striping can only pay off with several cores busy on different parts of the field, and it hasn't been
+ * shown to on one core. So there's a single stripe covering the whole field unless more are asked for
+ * with REGION_LOCK_STRIPES_PROPERTY.
+ *
+ */
+public class RegionLocks {
+
+	private static final int		MAX_STRIPE_COUNT	= 1024;
+
+	private final ReentrantLock[]	stripes;
+
+
+	/**
+	 * The stripe count is rounded up to a power of two.
+	 */
+	public RegionLocks(int stripeCount) {
+		int roundedStripeCount = 1;
+		while (roundedStripeCount < stripeCount && roundedStripeCount < MAX_STRIPE_COUNT) {
+			roundedStripeCount <<= 1;
+		}
+		stripes = new ReentrantLock[roundedStripeCount];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new ReentrantLock(true);
+		}
+	}
+
+
+	/**
+	 * Whether there's more than one stripe, if not callers can lock the whole field without working
+	 * out which cells they affect.
+	 */
+	public boolean isStriped() {
+		return stripes.length > 1;
+	}
+
+
+	/**
+	 * Locks the stripes covering the given cells and returns them so they can be passed to
+	 * unlock(). A null collection of cells means the whole field is locked.
+	 */
+	public int[] lock(Collection<Long> cellKeys) {
+		if (cellKeys == null || !isStriped()) {
+			return lockAll();
+		}
+
+		int[] stripeIndexes = new int[cellKeys.size()];
+		int count = 0;
+		for (Long cellKey : cellKeys) {
+			stripeIndexes[count++] = stripeIndex(cellKey);
+		}
+		Arrays.sort(stripeIndexes);
+
+		// Drop duplicates so each stripe is only locked once.
+		int uniqueCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (uniqueCount == 0 || stripeIndexes[uniqueCount - 1] != stripeIndexes[i]) {
+				stripeIndexes[uniqueCount++] = stripeIndexes[i];
+			}
+		}
+		stripeIndexes = Arrays.copyOf(stripeIndexes, uniqueCount);
+
+		for (int stripeIndex : stripeIndexes) {
+			stripes[stripeIndex].lock();
+		}
+		return stripeIndexes;
+	}
+
+
+	public int[] lockAll() {
+		int[] stripeIndexes = new int[stripes.length];
+		for (int i = 0; i < stripes.length; i++) {
+			stripeIndexes[i] = i;
+			stripes[i].lock();
+		}
+		return stripeIndexes;
+	}
+
+
+	public void unlock(int[] stripeIndexes) {
+		for (int i = stripeIndexes.length - 1; i >= 0; i--) {
+			stripes[stripeIndexes[i]].unlock();
+		}
+	}
+
+
+	private int stripeIndex(long cellKey) {
+		// Neighbouring cells differ in the low bits of each half of the key, so mix before masking.
+		int hash = (int) (cellKey ^ (cellKey >>> 32)) * 0x9E3779B9;
+		return (hash >>> 16) & (stripes.length - 1);
+	}
+
+}
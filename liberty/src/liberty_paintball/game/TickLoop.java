@@ -0,0 +1,246 @@
+package liberty_paintball.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import liberty_paintball.json.requests.GameActionRequest;
+
+/**
+ * @author Dave Waddling
+ *
+ * A game thread which collects attacks and location updates as they arrive and hands everything
+ * which arrived during each tick to a Resolver in one go, in the order it arrived. Requests wait
+ * (or are called back) until the tick they arrived in has been resolved.
+ *
+ */
+public class TickLoop implements Runnable {
+
+	private static final long			REPORT_INTERVAL_MILLIS	= TimeUnit.SECONDS.toMillis(10);
+
+	private final BlockingQueue<Action<?>>	pending;
+	private final Resolver				resolver;
+	private final long					tickMillis;
+	private final Thread				thread;
+	private long						ticksSinceLastReport;
+	private long						actionsSinceLastReport;
+	private long						lastReportTimeMillis;
+
+
+	public TickLoop(String name, long tickMillis, Resolver resolver) {
+		this.pending = new LinkedBlockingQueue<Action<?>>();
+		this.resolver = resolver;
+		this.tickMillis = tickMillis;
+		this.thread = new Thread(this, name);
+		this.thread.setDaemon(true);
+	}
+
+
+	public void start() {
+		lastReportTimeMillis = System.currentTimeMillis();
+		thread.start();
+		System.out.println("INFO Started tick loop '" + thread.getName() + "' with " + tickMillis + "ms ticks.");
+	}
+
+
+	/**
+	 * Queues the action for the next tick, the callback is completed by the tick thread once it's resolved.
+	 */
+	public <T> void submit(GameActionRequest request, GameCallback<T> callback) {
+		pending.add(new Action<T>(request, callback));
+	}
+
+
+	/**
+	 * Queues the action for the next tick and waits for it to be resolved.
+	 */
+	public <T> T execute(GameActionRequest request) {
+		WaitingCallback<T> callback = new WaitingCallback<T>();
+		submit(request, callback);
+		return callback.await();
+	}
+
+
+	/**
+	 * Queues the actions in order behind those already queued and waits for them all to be resolved,
+	 * returning their results in the same order. They're queued one at a time, so a tick may end
+	 * part way through them and leave the rest to the next one.
+	 */
+	public List<Object> executeAll(List<? extends GameActionRequest> requests) {
+		List<WaitingCallback<Object>> callbacks = new ArrayList<WaitingCallback<Object>>(requests.size());
+		for (GameActionRequest request : requests) {
+			WaitingCallback<Object> callback = new WaitingCallback<Object>();
+			submit(request, callback);
+			callbacks.add(callback);
+		}
+		List<Object> results = new ArrayList<Object>(requests.size());
+		for (WaitingCallback<Object> callback : callbacks) {
+			results.add(callback.await());
+		}
+		return results;
+	}
+
+
+	@Override
+	public void run() {
+		long nextTickMillis = System.currentTimeMillis() + tickMillis;
+		while (true) {
+			try {
+				long sleepMillis = nextTickMillis - System.currentTimeMillis();
+				if (sleepMillis > 0) {
+					Thread.sleep(sleepMillis);
+				}
+			} catch (InterruptedException e) {
+				System.out.println("WARNING Tick loop '" + thread.getName() + "' was interrupted. Stopping.");
+				return;
+			}
+			nextTickMillis += tickMillis;
+
+			List<Action<?>> actions = new ArrayList<Action<?>>();
+			pending.drainTo(actions);
+			if (!actions.isEmpty()) {
+				tick(actions);
+			}
+			reportThroughput(actions.size());
+		}
+	}
+
+
+	private void tick(List<Action<?>> actions) {
+		try {
+			resolver.resolveTick(actions);
+		} catch (RuntimeException e) {
+			System.out.println("WARNING Tick failed: " + e);
+			for (Action<?> action : actions) {
+				action.fail(e);
+			}
+			return;
+		}
+		// Completed after resolving so no locks taken by the resolver are held while calling back.
+		for (Action<?> action : actions) {
+			action.complete();
+		}
+	}
+
+
+	private void reportThroughput(int actionCount) {
+		ticksSinceLastReport++;
+		actionsSinceLastReport += actionCount;
+		long now = System.currentTimeMillis();
+		long elapsedMillis = now - lastReportTimeMillis;
+		if (elapsedMillis >= REPORT_INTERVAL_MILLIS) {
+			if (actionsSinceLastReport > 0) {
+				System.out.println("INFO Tick loop '" + thread.getName() + "' resolved " + (actionsSinceLastReport * 1000 / elapsedMillis) + " actions/sec, " + (actionsSinceLastReport / ticksSinceLastReport) + " per tick.");
+			}
+			ticksSinceLastReport = 0;
+			actionsSinceLastReport = 0;
+			lastReportTimeMillis = now;
+		}
+	}
+
+	/**
+	 * Resolves all of the actions which arrived during a tick, setting the result of each.
+	 */
+	public interface Resolver {
+
+		void resolveTick(List<Action<?>> actions);
+
+	}
+
+	/**
+	 * An attack or location update waiting for its tick to be resolved.
+	 */
+	public static final class Action<T> {
+
+		private final GameActionRequest	request;
+		private final GameCallback<T>	callback;
+		private T						result;
+		private boolean					isCompleted;
+
+
+		private Action(GameActionRequest request, GameCallback<T> callback) {
+			this.request = request;
+			this.callback = callback;
+		}
+
+
+		public GameActionRequest getRequest() {
+			return request;
+		}
+
+
+		@SuppressWarnings("unchecked")
+		public void setResult(Object result) {
+			this.result = (T) result;
+		}
+
+
+		private void complete() {
+			if (!isCompleted) {
+				isCompleted = true;
+				callback.completed(result);
+			}
+		}
+
+
+		private void fail(Throwable failure) {
+			if (!isCompleted) {
+				isCompleted = true;
+				callback.failed(failure);
+			}
+		}
+	}
+
+	private static final class WaitingCallback<T> implements GameCallback<T> {
+
+		private final CountDownLatch	latch	= new CountDownLatch(1);
+		private volatile T				result;
+		private volatile Throwable		failure;
+
+
+		@Override
+		public void completed(T result) {
+			this.result = result;
+			latch.countDown();
+		}
+
+
+		@Override
+		public void failed(Throwable failure) {
+			this.failure = failure;
+			latch.countDown();
+		}
+
+
+		private T await() {
+			boolean interrupted = false;
+			try {
+				while (true) {
+					try {
+						latch.await();
+						break;
+					} catch (InterruptedException e) {
+						// The action is already queued so it will be resolved regardless, wait for it.
+						interrupted = true;
+					}
+				}
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else if (failure instanceof Error) {
+				throw (Error) failure;
+			} else if (failure != null) {
+				throw new IllegalStateException("Game action failed.", failure);
+			}
+			return result;
+		}
+	}
+
+}
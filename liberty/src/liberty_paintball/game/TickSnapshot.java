@@ -0,0 +1,87 @@
+package liberty_paintball.game;
+
+import static liberty_paintball.game.PlayerGrid.latitudeSpanDegrees;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author Dave Waddling
+ *
+ * The positions of every active player at the point a tick is resolved, sorted by latitude. All of
+ * the attacks in a tick are checked against the same snapshot, so the players in range of each one
+ * don't depend on the order the attacks arrived in or on who else was hit in the same tick.
+ *
+ * Range finding is a binary search for the band of latitude within the radius followed by a scan of
+ * that band, so the snapshot is built once per tick however many attacks there are.
+ *
+ */
+class TickSnapshot {
+
+	private final double	radiusMeters;
+	private final double	latitudeSpan;
+	private final Player[]	players;
+	private final Location[]	locations;
+	private final double[]	latitudes;
+
+
+	TickSnapshot(Collection<Player> activePlayers, double radiusMeters) {
+		this.radiusMeters = radiusMeters;
+		this.latitudeSpan = latitudeSpanDegrees(radiusMeters);
+
+		List<Object[]> entries = new ArrayList<Object[]>(activePlayers.size());
+		for (Player player : activePlayers) {
+			PlayerState state = player.getState();
+			if (!state.isEliminated() && state.getLocation() != null) {
+				entries.add(new Object[] { player, state.getLocation() });
+			}
+		}
+		Object[][] sorted = entries.toArray(new Object[entries.size()][]);
+		Arrays.sort(sorted, new Comparator<Object[]>() {
+			@Override
+			public int compare(Object[] entryA, Object[] entryB) {
+				return Double.compare(((Location) entryA[1]).getLatitude(), ((Location) entryB[1]).getLatitude());
+			}
+		});
+
+		players = new Player[sorted.length];
+		locations = new Location[sorted.length];
+		latitudes = new double[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			players[i] = (Player) sorted[i][0];
+			locations[i] = (Location) sorted[i][1];
+			latitudes[i] = locations[i].getLatitude();
+		}
+	}
+
+
+	List<Player> findPlayersInRange(Location location, String excludedUsername) {
+		List<Player> playersInRange = new ArrayList<Player>();
+		double maxLatitude = location.getLatitude() + latitudeSpan;
+		for (int i = firstIndexAtOrAbove(location.getLatitude() - latitudeSpan); i < latitudes.length && latitudes[i] <= maxLatitude; i++) {
+			if (!players[i].getUsername().equals(excludedUsername) && Location.distanceBetweenLocationsMeters(location, locations[i]) < radiusMeters) {
+				playersInRange.add(players[i]);
+			}
+		}
+		return playersInRange;
+	}
+
+
+	private int firstIndexAtOrAbove(double latitude) {
+		int low = 0;
+		int high = latitudes.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (latitudes[middle] < latitude) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+}
@@ -1,75 +1,691 @@
 package liberty_paintball.game;
 
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import liberty_paintball.game.events.Event;
+import liberty_paintball.mapping.HeatmapTile;
+import liberty_paintball.mapping.MapDelta;
+import liberty_paintball.mapping.MapJsonWriter;
 import liberty_paintball.mapping.MapPoint;
+import liberty_paintball.mapping.MapRollup;
 
 /**
  * @author Dave Waddling
- * 
- * Maintains a store of game events in chronological order. 
+ *
+ * Maintains a store of game events in chronological order.
+ *
+ * Events are appended to a ChunkedLog so readers don't take a lock, while writers take a lock
+ * to append. Events are numbered by sequence, and the cursor used for map deltas is the timeline's id
+ * above the sequence number, so a cursor from another timeline (before a reset, say) is recognized
+ * and answered with the whole map rather than being taken as a position in this one.
+ *
+ * Alongside each event the time it's indexed by is kept, which is the time it occurred unless an
+ * earlier event was appended with a later time (requests can race between creating an event and
+ * adding it). Index times never go backwards, so the boundary between events old enough for the
+ * delayed map and those which aren't can be found with a binary search.
+ *
+ * Each event's map point is made once when it's added, and serialized as JSON once at the same time
+ * so writeMapPoints() can write a view of the map by copying the bytes. The delayed map is kept ready made:
+ * promoteDelayedEvents() is called on a schedule and moves the end of the delayed map past each
+ * event which has become old enough, so requests for the delayed map are served a read-only view of
+ * the promoted map points without any filtering or copying. The realtime map is a view in the same way.
+ *
+ * Events are only kept for so long. rollUpOldEvents() drops the oldest events once they're past the
+ * retention age or there are more than the budget allows, and adds them to a TimelineRollup instead.
+ *
+ * The events kept are also indexed by a TimelineIndex so query() can find the events matching a
+ * TimelineQuery by looking at the fewest candidates, and counted in an ActivityHeatmap for drawing
+ * heatmaps without fetching the events.
+ *
+ * getVersion() gives a number which changes whenever the realtime or delayed map does, so a map
+ * which hasn't changed doesn't need to be sent again.
+ *
+ * For checkpoints the events and rollup are captured together with checkpoint(), and a timeline is
+ * restored from them by the constructor which takes a rollup, followed by addRestoredEvents(). The
+ * restored timeline keeps the id and sequence numbers of the one checkpointed, so clients' cursors
+ * still point at the same events after a restart. Restored events are only appended, so restoring
+ * doesn't take longer the more events were kept: they're indexed, counted in the heatmap and
+ * serialized by prepareRestoredEvents() once the game is up, or by the first query or heatmap
+ * request which needs them before then.
  *
  */
 public class Timeline {
 
 	// When delayed map data is requested this value determines how old
 	// an event must be for it to be returned.
-	private static final int	NEWS_FEED_DELAY_MINUTES	= 5;
+	static final int						NEWS_FEED_DELAY_MINUTES	= 5;
+
+	// Cursors are kept within the 53 bits a JavaScript number holds exactly, with room for 2^36 events
+	// in a game and 2^17 ids.
+	private static final int				CURSOR_SEQUENCE_BITS	= 36;
+	private static final long				CURSOR_SEQUENCE_MASK	= (1L << CURSOR_SEQUENCE_BITS) - 1;
+	private static final long				ID_MASK					= (1L << 17) - 1;
 
-	private List<Event>			events;
+	private final long						id;
+	private final ReentrantLock				appendLock;
+	private final ChunkedLog<Entry>			entries;
+	private final ReentrantLock				promoteLock;
+	private volatile long					delayedEnd;
+	private final TimelineRollup			rollup;
+	private final TimelineIndex				index;
+	private final ActivityHeatmap			heatmap;
+	// Events before this have been indexed and counted in the heatmap, written under the append lock.
+	private volatile long					indexedEnd;
 
 
 	public Timeline() {
-		events = new LinkedList<Event>();
+		this(new Random().nextLong(), 0, new TimelineRollup());
+	}
+
+
+	/**
+	 * Creates a timeline with the given id whose first event will have the given sequence number, for a
+	 * timeline restored from a checkpoint.
+	 */
+	Timeline(long id, long firstSequence, TimelineRollup rollup) {
+		this.id = id & ID_MASK;
+		appendLock = new ReentrantLock();
+		entries = new ChunkedLog<Entry>(firstSequence);
+		promoteLock = new ReentrantLock();
+		delayedEnd = firstSequence;
+		this.rollup = rollup;
+		index = new TimelineIndex();
+		heatmap = new ActivityHeatmap();
+		indexedEnd = firstSequence;
 	}
 
 
 	public void addEvent(Event event) {
-		synchronized (events) {
-			events.add(event);
+		MapPoint mapPoint = event.toMapPoint();
+		byte[] mapPointJson = MapJsonWriter.toJson(mapPoint);
+		appendLock.lock();
+		try {
+			ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+			long sequence = snapshot.end();
+			entries.append(new Entry(event, indexTimeOf(event, snapshot), mapPoint, mapPointJson));
+			// Events appended while restored events are still waiting are indexed along with them.
+			if (indexedEnd == sequence) {
+				index.add(sequence, mapPoint);
+				heatmap.add(mapPoint);
+				indexedEnd = sequence + 1;
+			}
+		} finally {
+			appendLock.unlock();
 		}
 	}
 
 
-	public List<Event> getAllEvents() {
-		synchronized (events) {
-			return events;
+	/**
+	 * Appends events restored from a checkpoint without indexing them, counting them in the heatmap or
+	 * serializing their map points, which is left to prepareRestoredEvents().
+	 */
+	void addRestoredEvents(List<Event> events) {
+		appendLock.lock();
+		try {
+			for (Event event : events) {
+				entries.append(new Entry(event, indexTimeOf(event, entries.snapshot()), event.toMapPoint(), null));
+			}
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Indexes the restored events, counts them in the heatmap and serializes their map points, so none
+	 * of it is left for the requests which first need them.
+	 */
+	void prepareRestoredEvents() {
+		indexRestoredEvents();
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		for (long sequence = snapshot.first(); sequence < snapshot.end(); sequence++) {
+			snapshot.get(sequence).getMapPointJson();
+		}
+	}
+
+
+	private void indexRestoredEvents() {
+		if (indexedEnd == entries.snapshot().end()) {
+			return;
 		}
+		appendLock.lock();
+		try {
+			ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+			for (long sequence = indexedEnd; sequence < snapshot.end(); sequence++) {
+				MapPoint mapPoint = snapshot.get(sequence).mapPoint;
+				index.add(sequence, mapPoint);
+				heatmap.add(mapPoint);
+			}
+			indexedEnd = snapshot.end();
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+
+	/**
+	 * The caller must hold the append lock.
+	 */
+	private static long indexTimeOf(Event event, ChunkedLog.Snapshot<Entry> snapshot) {
+		long indexTime = event.getTimeOccurred();
+		if (snapshot.end() > snapshot.first()) {
+			indexTime = Math.max(indexTime, snapshot.get(snapshot.end() - 1).indexTime);
+		}
+		return indexTime;
 	}
 
 
+	public List<Event> getAllEvents() {
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		return getEvents(snapshot, snapshot.first());
+	}
+
+
+	/**
+	 * Returns up to the requested number of the most recent events, oldest first.
+	 */
 	public List<Event> getLatestEvents(int numEventsRequested) {
-		synchronized (events) {
-			// Cannot return more events than are in the list (size-1).
-			int lastEventIndex = numEventsRequested < events.size() ? numEventsRequested : events.size() - 1;
-			return events.subList(0, lastEventIndex);
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		return getEvents(snapshot, Math.max(snapshot.first(), snapshot.end() - numEventsRequested));
+	}
+
+
+	private static List<Event> getEvents(ChunkedLog.Snapshot<Entry> snapshot, long first) {
+		List<Event> events = new ArrayList<Event>((int) (snapshot.end() - first));
+		for (long sequence = first; sequence < snapshot.end(); sequence++) {
+			events.add(snapshot.get(sequence).event);
 		}
+		return events;
 	}
 
 
+	/**
+	 * Returns a read-only view of the map points of every event kept so far.
+	 */
 	public List<MapPoint> getRealtimeMapData() {
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		return new MapPointView(snapshot, snapshot.first(), snapshot.end());
+	}
+
+
+	/**
+	 * Returns an empty timeline to replace this one when the game is reset. Its id follows this one's,
+	 * so cursors and versions from this timeline are never taken as its own.
+	 */
+	Timeline successor() {
+		return new Timeline(id + 1, 0, new TimelineRollup());
+	}
+
+
+	/**
+	 * Returns the map data for events added since the cursor from an earlier delta, which points at the
+	 * first event the caller hasn't seen yet.
+	 */
+	public MapDelta getRealtimeMapDataSince(long cursor) {
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		return new MapDelta(cursorOf(snapshot.end()), new MapPointView(snapshot, firstSince(cursor, snapshot.first(), snapshot.end()), snapshot.end()));
+	}
+
+
+	/**
+	 * Returns a read-only view of the delayed map as of the last promotion.
+	 */
+	public List<MapPoint> getDelayedMapData() {
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		return new MapPointView(snapshot, snapshot.first(), delayedEndOf(snapshot));
+	}
+
+
+	public MapDelta getDelayedMapDataSince(long cursor) {
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		long end = delayedEndOf(snapshot);
+		return new MapDelta(cursorOf(end), new MapPointView(snapshot, firstSince(cursor, snapshot.first(), end), end));
+	}
+
+
+	/**
+	 * Returns the end of the delayed map within the snapshot. The end is promoted and events are dropped
+	 * without waiting for readers, so it can have moved past the snapshot's end since the snapshot was
+	 * taken, or not yet caught up with events dropped just before it.
+	 */
+	private long delayedEndOf(ChunkedLog.Snapshot<Entry> snapshot) {
+		return Math.min(Math.max(delayedEnd, snapshot.first()), snapshot.end());
+	}
+
+
+	/**
+	 * Writes the map points to the writer, using the JSON kept for each event when they're a view of
+	 * the timeline so none of them are serialized again.
+	 */
+	static void writeMapPoints(List<MapPoint> mapData, MapJsonWriter writer) throws IOException {
+		if (!(mapData instanceof MapPointView)) {
+			writer.writeMapPoints(mapData);
+			return;
+		}
+		MapPointView view = (MapPointView) mapData;
+		for (long sequence = view.first; sequence < view.first + view.count; sequence++) {
+			writer.writeMapPointJson(view.snapshot.get(sequence).getMapPointJson());
+		}
+	}
+
+
+	/**
+	 * Returns the timeline's id, picked at random for a new game and the next one after a reset, so its
+	 * versions and cursors can't be mistaken for those of the timeline before it. A timeline restored
+	 * from a checkpoint keeps the id it had.
+	 */
+	public long getId() {
+		return id;
+	}
+
+
+	/**
+	 * Returns the version of the realtime or delayed map, which changes whenever the map would. Events
+	 * never change once they're added so the map is fixed by where it starts and ends, and as neither
+	 * ever goes backwards their sum only stays the same while the map does.
+	 */
+	public long getVersion(boolean isRealtime) {
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		long end = isRealtime ? snapshot.end() : delayedEndOf(snapshot);
+		return snapshot.first() + end;
+	}
+
+
+	/**
+	 * Adds the events which have become old enough to the delayed map.
+	 */
+	public void promoteDelayedEvents() {
+		promoteLock.lock();
+		try {
+			long cutoffMillis = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(NEWS_FEED_DELAY_MINUTES);
+			ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+			long newEnd = findFirstIndexedAtOrAfter(snapshot, Math.max(delayedEnd, snapshot.first()), cutoffMillis);
+			if (newEnd > delayedEnd) {
+				delayedEnd = newEnd;
+			}
+		} finally {
+			promoteLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Drops the events which occurred before the cutoff, and the oldest events beyond the maximum number
+	 * to keep, adding them to the rollup. Events are dropped a chunk at a time, so up to a chunk more than
+	 * the maximum may be kept while the newest chunk fills up.
+	 */
+	public void rollUpOldEvents(long cutoffMillis, long maxRetainedEvents) {
+		// Promote first so nothing old enough is dropped before reaching the delayed map, and index
+		// any restored events so they can be dropped from the index.
+		promoteDelayedEvents();
+		indexRestoredEvents();
+
+		appendLock.lock();
+		promoteLock.lock();
+		try {
+			ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+			long dropBefore = ChunkedLog.chunkStart(findFirstIndexedAtOrAfter(snapshot, snapshot.first(), cutoffMillis));
+			long overBudget = snapshot.end() - maxRetainedEvents;
+			if (overBudget > 0) {
+				long overBudgetChunkEnd = ChunkedLog.chunkStart(overBudget + ChunkedLog.CHUNK_SIZE - 1);
+				dropBefore = Math.max(dropBefore, Math.min(overBudgetChunkEnd, ChunkedLog.chunkStart(snapshot.end())));
+			}
+			if (dropBefore <= snapshot.first()) {
+				return;
+			}
+
+			List<MapPoint> droppedMapPoints = new ArrayList<MapPoint>((int) (dropBefore - snapshot.first()));
+			for (long sequence = snapshot.first(); sequence < dropBefore; sequence++) {
+				MapPoint mapPoint = snapshot.get(sequence).mapPoint;
+				rollup.add(mapPoint);
+				droppedMapPoints.add(mapPoint);
+			}
+			entries.dropBefore(dropBefore);
+			index.dropBefore(dropBefore, droppedMapPoints);
+			if (delayedEnd < dropBefore) {
+				delayedEnd = dropBefore;
+			}
+		} finally {
+			promoteLock.unlock();
+			appendLock.unlock();
+		}
+		System.out.println("INFO Timeline keeps " + getRetainedEventCount() + " events, " + rollup.getRolledUpEventCount() + " older events are rolled up into " + rollup.getCellCount() + " map cells.");
+	}
+
+
+	/**
+	 * Captures the events and rollup as they are now. It's only a snapshot and a copy of the rollup, so
+	 * it's quick enough to take while the game is locked.
+	 */
+	Checkpoint checkpoint() {
+		appendLock.lock();
+		try {
+			return new Checkpoint(id, entries.snapshot(), rollup.copy());
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Returns the map points of the events which match the query, oldest first. The candidates are taken
+	 * from whichever index has the fewest events for the query's criteria, or the events in its time range
+	 * if that's fewer, and each is checked against every criterion.
+	 *
+	 * The time range is found by index time, so an event added after one with a later time is found by
+	 * queries of the later time, but is only returned if its own time is in range.
+	 */
+	public List<MapPoint> query(TimelineQuery query) {
+		indexRestoredEvents();
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		long first = query.getFromMillis() == null ? snapshot.first() : findFirstIndexedAtOrAfter(snapshot, snapshot.first(), query.getFromMillis());
+		long end = query.getToMillis() == null ? snapshot.end() : findFirstIndexedAfter(snapshot, first, query.getToMillis());
+
+		List<ChunkedLog.Snapshot<Long>> candidates = null;
+		long candidateCount = end - first;
+		if (query.getAttacker() != null) {
+			candidates = toList(index.getAttackerPostings(query.getAttacker()));
+			candidateCount = countPostings(candidates, first, end);
+		}
+		if (query.getParticipant() != null) {
+			List<ChunkedLog.Snapshot<Long>> participantPostings = toList(index.getParticipantPostings(query.getParticipant()));
+			long participantCount = countPostings(participantPostings, first, end);
+			if (candidates == null || participantCount < candidateCount) {
+				candidates = participantPostings;
+				candidateCount = participantCount;
+			}
+		}
+		if (query.getType() != null) {
+			List<ChunkedLog.Snapshot<Long>> typePostings = toList(index.getTypePostings(query.getType()));
+			long typeCount = countPostings(typePostings, first, end);
+			if (candidates == null || typeCount < candidateCount) {
+				candidates = typePostings;
+				candidateCount = typeCount;
+			}
+		}
+		if (query.hasBoundingBox()) {
+			List<ChunkedLog.Snapshot<Long>> cellPostings = index.getCellPostings(query.getMinLatitude(), query.getMinLongitude(), query.getMaxLatitude(), query.getMaxLongitude());
+			long cellCount = countPostings(cellPostings, first, end);
+			if (candidates == null || cellCount < candidateCount) {
+				candidates = cellPostings;
+				candidateCount = cellCount;
+			}
+		}
+
+		// Newest first so the limit keeps the latest, then put back into time order. Without an index
+		// which narrows things down the events in the time range are the candidates.
 		List<MapPoint> mapData = new ArrayList<MapPoint>();
-		synchronized (events) {
-			for (Event event : events) {
-				mapData.add(event.toMapPoint());
+		if (candidates == null || candidateCount >= end - first) {
+			for (long sequence = end - 1; sequence >= first && mapData.size() < query.getLimit(); sequence--) {
+				addIfMatches(query, snapshot.get(sequence).mapPoint, mapData);
+			}
+		} else if (candidates.size() == 1) {
+			ChunkedLog.Snapshot<Long> postings = candidates.get(0);
+			long postingFirst = TimelineIndex.findFirstPostingAtOrAfter(postings, first);
+			for (long posting = TimelineIndex.findFirstPostingAtOrAfter(postings, end) - 1; posting >= postingFirst && mapData.size() < query.getLimit(); posting--) {
+				addIfMatches(query, snapshot.get(postings.get(posting)).mapPoint, mapData);
+			}
+		} else {
+			long[] sequences = new long[(int) candidateCount];
+			int count = 0;
+			for (ChunkedLog.Snapshot<Long> postings : candidates) {
+				long postingEnd = TimelineIndex.findFirstPostingAtOrAfter(postings, end);
+				for (long posting = TimelineIndex.findFirstPostingAtOrAfter(postings, first); posting < postingEnd; posting++) {
+					sequences[count++] = postings.get(posting);
+				}
+			}
+			Arrays.sort(sequences);
+			for (int candidate = sequences.length - 1; candidate >= 0 && mapData.size() < query.getLimit(); candidate--) {
+				addIfMatches(query, snapshot.get(sequences[candidate]).mapPoint, mapData);
 			}
 		}
+		Collections.reverse(mapData);
 		return mapData;
 	}
 
 
-	public List<MapPoint> getDelayedMapData() {
-		List<MapPoint> mapData = new ArrayList<MapPoint>();
-		synchronized (events) {
-			for (Event event : events) {
-				if (event.isOlderThanMinutes(NEWS_FEED_DELAY_MINUTES)) {
-					mapData.add(event.toMapPoint());
+	private static List<ChunkedLog.Snapshot<Long>> toList(ChunkedLog.Snapshot<Long> postings) {
+		return postings == null ? Collections.<ChunkedLog.Snapshot<Long>> emptyList() : Collections.singletonList(postings);
+	}
+
+
+	private static long countPostings(List<ChunkedLog.Snapshot<Long>> candidates, long first, long end) {
+		long count = 0;
+		for (ChunkedLog.Snapshot<Long> postings : candidates) {
+			count += TimelineIndex.findFirstPostingAtOrAfter(postings, end) - TimelineIndex.findFirstPostingAtOrAfter(postings, first);
+		}
+		return count;
+	}
+
+
+	private static void addIfMatches(TimelineQuery query, MapPoint mapPoint, List<MapPoint> mapData) {
+		if (matches(query, mapPoint)) {
+			mapData.add(mapPoint);
+		}
+	}
+
+
+	private static boolean matches(TimelineQuery query, MapPoint mapPoint) {
+		if (query.getAttacker() != null && (mapPoint.getAttackerIdentity() == null || !query.getAttacker().equals(mapPoint.getAttackerIdentity().getUsername()))) {
+			return false;
+		}
+		if (query.getParticipant() != null && !hasParticipant(mapPoint, query.getParticipant())) {
+			return false;
+		}
+		if (query.getType() != null && query.getType() != mapPoint.getType()) {
+			return false;
+		}
+		if (query.getFromMillis() != null && mapPoint.getTimeOccurred() < query.getFromMillis()) {
+			return false;
+		}
+		if (query.getToMillis() != null && mapPoint.getTimeOccurred() > query.getToMillis()) {
+			return false;
+		}
+		if (query.hasBoundingBox()) {
+			Location location = mapPoint.getLocation();
+			if (location == null || location.getLatitude() < query.getMinLatitude() || location.getLatitude() > query.getMaxLatitude() || location.getLongitude() < query.getMinLongitude() || location.getLongitude() > query.getMaxLongitude()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	private static boolean hasParticipant(MapPoint mapPoint, String username) {
+		if (mapPoint.getParticipantIdentities() != null) {
+			for (PlayerIdentity participantIdentity : mapPoint.getParticipantIdentities()) {
+				if (username.equals(participantIdentity.getUsername())) {
+					return true;
 				}
 			}
-			return mapData;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the heatmap tile, or null if there's no heatmap at the zoom level.
+	 */
+	public HeatmapTile getHeatmapTile(int zoom, int x, int y, int minutes) {
+		if (!ActivityHeatmap.isZoomLevel(zoom)) {
+			return null;
+		}
+		indexRestoredEvents();
+		return heatmap.getTile(zoom, x, y, minutes);
+	}
+
+
+	public long getRetainedEventCount() {
+		ChunkedLog.Snapshot<Entry> snapshot = entries.snapshot();
+		return snapshot.end() - snapshot.first();
+	}
+
+
+	public MapRollup getRollup() {
+		return rollup.toMapRollup(getRetainedEventCount());
+	}
+
+
+	/**
+	 * Finds the first event from the given sequence indexed at or after the time.
+	 */
+	private static long findFirstIndexedAtOrAfter(ChunkedLog.Snapshot<Entry> snapshot, long first, long timeMillis) {
+		long low = first;
+		long high = snapshot.end();
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (snapshot.get(middle).indexTime < timeMillis) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+
+	/**
+	 * Like findFirstIndexedAtOrAfter() but strictly after the time, for the end of an inclusive range.
+	 * Adding a millisecond instead would overflow for a range which is open ended at Long.MAX_VALUE.
+	 */
+	private static long findFirstIndexedAfter(ChunkedLog.Snapshot<Entry> snapshot, long first, long timeMillis) {
+		long low = first;
+		long high = snapshot.end();
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (snapshot.get(middle).indexTime <= timeMillis) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+
+	private long firstSince(long cursor, long first, long end) {
+		// A cursor from another timeline, or past the end of this one, starts again from the first event
+		// kept. One from before the oldest events kept gets everything which is still kept.
+		long sequence = cursor & CURSOR_SEQUENCE_MASK;
+		if (cursor >>> CURSOR_SEQUENCE_BITS != id || sequence > end) {
+			return first;
+		}
+		return Math.max(sequence, first);
+	}
+
+
+	private long cursorOf(long sequence) {
+		return id << CURSOR_SEQUENCE_BITS | sequence;
+	}
+
+	/**
+	 * An event in the timeline, with its map point and the map point's JSON. The JSON of a restored
+	 * event is made when it's first needed, and if two threads need it at once both make the same bytes.
+	 */
+	private static final class Entry {
+
+		private final Event				event;
+		private final long				indexTime;
+		private final MapPoint			mapPoint;
+		private volatile byte[]			mapPointJson;
+
+
+		private Entry(Event event, long indexTime, MapPoint mapPoint, byte[] mapPointJson) {
+			this.event = event;
+			this.indexTime = indexTime;
+			this.mapPoint = mapPoint;
+			this.mapPointJson = mapPointJson;
+		}
+
+
+		private byte[] getMapPointJson() {
+			byte[] json = mapPointJson;
+			if (json == null) {
+				json = MapJsonWriter.toJson(mapPoint);
+				mapPointJson = json;
+			}
+			return json;
+		}
+	}
+
+	/**
+	 * The events and rollup of a timeline at one point in time.
+	 */
+	static final class Checkpoint {
+
+		private final long							id;
+		private final ChunkedLog.Snapshot<Entry>	snapshot;
+		private final TimelineRollup				rollup;
+
+
+		private Checkpoint(long id, ChunkedLog.Snapshot<Entry> snapshot, TimelineRollup rollup) {
+			this.id = id;
+			this.snapshot = snapshot;
+			this.rollup = rollup;
+		}
+
+
+		long getId() {
+			return id;
+		}
+
+
+		/**
+		 * Returns the sequence number of the first event, which is always the start of a chunk.
+		 */
+		long getFirstSequence() {
+			return snapshot.first();
+		}
+
+
+		List<Event> getEvents() {
+			return Timeline.getEvents(snapshot, snapshot.first());
+		}
+
+
+		TimelineRollup getRollup() {
+			return rollup;
+		}
+	}
+
+	/**
+	 * The map points of a range of events in a snapshot. Entries are never changed once they're added
+	 * so it can be read without a lock, and without copying the map points.
+	 */
+	private static final class MapPointView extends AbstractList<MapPoint> {
+
+		private final ChunkedLog.Snapshot<Entry>	snapshot;
+		private final long							first;
+		private final int							count;
+
+
+		private MapPointView(ChunkedLog.Snapshot<Entry> snapshot, long first, long end) {
+			this.snapshot = snapshot;
+			this.first = first;
+			this.count = (int) (end - first);
+		}
+
+
+		@Override
+		public MapPoint get(int index) {
+			if (index < 0 || index >= count) {
+				throw new IndexOutOfBoundsException("Index " + index + " of " + count + ".");
+			}
+			return snapshot.get(first + index).mapPoint;
+		}
+
+
+		@Override
+		public int size() {
+			return count;
 		}
 	}
 
@@ -0,0 +1,219 @@
+package liberty_paintball.game;
+
+import static java.lang.Math.floor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import liberty_paintball.game.events.Event.EventType;
+import liberty_paintball.mapping.MapPoint;
+
+/**
+ * @author Dave Waddling
+ *
+ * Secondary indexes of a Timeline's events by attacker, by participant, by type and by area of the
+ * map. Each index maps a key to the sequence numbers of the events with that key, in the order they
+ * were added, held in a ChunkedLog so queries can read them without a lock.
+ *
+ * Like the timeline itself, changes must be serialized by the caller. There's no index by time as
+ * the timeline is already in time order.
+ *
+ */
+class TimelineIndex {
+
+	private final Postings<String>		byAttacker;
+	private final Postings<String>		byParticipant;
+	private final Postings<EventType>	byType;
+	// Keyed by the spread cell key, see CellKeys.
+	private final Postings<Long>		byCell;
+
+
+	TimelineIndex() {
+		byAttacker = new Postings<String>();
+		byParticipant = new Postings<String>();
+		byType = new Postings<EventType>();
+		byCell = new Postings<Long>();
+	}
+
+
+	void add(long sequence, MapPoint mapPoint) {
+		if (mapPoint.getAttackerIdentity() != null) {
+			byAttacker.add(mapPoint.getAttackerIdentity().getUsername(), sequence);
+		}
+		if (mapPoint.getParticipantIdentities() != null) {
+			for (PlayerIdentity participantIdentity : mapPoint.getParticipantIdentities()) {
+				byParticipant.add(participantIdentity.getUsername(), sequence);
+			}
+		}
+		byType.add(mapPoint.getType(), sequence);
+		if (mapPoint.getLocation() != null) {
+			byCell.add(CellKeys.spread(TimelineRollup.cellKeyOf(mapPoint.getLocation())), sequence);
+		}
+	}
+
+
+	/**
+	 * Drops the events before the sequence number, given the map points of the events being dropped.
+	 */
+	void dropBefore(long sequence, Collection<MapPoint> droppedMapPoints) {
+		Set<String> attackers = new HashSet<String>();
+		Set<String> participants = new HashSet<String>();
+		Set<Long> cells = new HashSet<Long>();
+		for (MapPoint mapPoint : droppedMapPoints) {
+			if (mapPoint.getAttackerIdentity() != null) {
+				attackers.add(mapPoint.getAttackerIdentity().getUsername());
+			}
+			if (mapPoint.getParticipantIdentities() != null) {
+				for (PlayerIdentity participantIdentity : mapPoint.getParticipantIdentities()) {
+					participants.add(participantIdentity.getUsername());
+				}
+			}
+			if (mapPoint.getLocation() != null) {
+				cells.add(CellKeys.spread(TimelineRollup.cellKeyOf(mapPoint.getLocation())));
+			}
+		}
+		byAttacker.dropBefore(attackers, sequence);
+		byParticipant.dropBefore(participants, sequence);
+		byType.dropBefore(byType.keys(), sequence);
+		byCell.dropBefore(cells, sequence);
+	}
+
+
+	ChunkedLog.Snapshot<Long> getAttackerPostings(String username) {
+		return byAttacker.get(username);
+	}
+
+
+	ChunkedLog.Snapshot<Long> getParticipantPostings(String username) {
+		return byParticipant.get(username);
+	}
+
+
+	ChunkedLog.Snapshot<Long> getTypePostings(EventType type) {
+		return byType.get(type);
+	}
+
+
+	/**
+	 * Returns the postings of every cell which overlaps the box.
+	 */
+	List<ChunkedLog.Snapshot<Long>> getCellPostings(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+		long minRow = (long) floor(minLatitude / TimelineRollup.CELL_SIZE_DEGREES);
+		long maxRow = (long) floor(maxLatitude / TimelineRollup.CELL_SIZE_DEGREES);
+		long minColumn = (long) floor(minLongitude / TimelineRollup.CELL_SIZE_DEGREES);
+		long maxColumn = (long) floor(maxLongitude / TimelineRollup.CELL_SIZE_DEGREES);
+
+		List<ChunkedLog.Snapshot<Long>> cellPostings = new ArrayList<ChunkedLog.Snapshot<Long>>();
+		double cellsInBox = (double) (maxRow - minRow + 1) * (maxColumn - minColumn + 1);
+		if (cellsInBox <= byCell.size()) {
+			for (long row = minRow; row <= maxRow; row++) {
+				for (long column = minColumn; column <= maxColumn; column++) {
+					ChunkedLog.Snapshot<Long> postings = byCell.get(CellKeys.spread(TimelineRollup.cellKeyOf(row, column)));
+					if (postings != null) {
+						cellPostings.add(postings);
+					}
+				}
+			}
+		} else {
+			// A big box, so look through the cells which have events instead.
+			for (Long spreadCellKey : byCell.keys()) {
+				long cellKey = CellKeys.unspread(spreadCellKey);
+				long row = cellKey >> 32;
+				long column = (int) cellKey;
+				if (row >= minRow && row <= maxRow && column >= minColumn && column <= maxColumn) {
+					ChunkedLog.Snapshot<Long> postings = byCell.get(spreadCellKey);
+					if (postings != null) {
+						cellPostings.add(postings);
+					}
+				}
+			}
+		}
+		return cellPostings;
+	}
+
+
+	/**
+	 * Finds the first posting for an event at or after the sequence number.
+	 */
+	static long findFirstPostingAtOrAfter(ChunkedLog.Snapshot<Long> postings, long sequence) {
+		long low = postings.first();
+		long high = postings.end();
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (postings.get(middle) < sequence) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * One index, from each key to the sequence numbers of its events.
+	 */
+	private static final class Postings<K> {
+
+		private final Map<K, ChunkedLog<Long>>	postings;
+
+
+		private Postings() {
+			postings = new ConcurrentHashMap<K, ChunkedLog<Long>>();
+		}
+
+
+		private void add(K key, long sequence) {
+			ChunkedLog<Long> keyPostings = postings.get(key);
+			if (keyPostings == null) {
+				keyPostings = new ChunkedLog<Long>();
+				postings.put(key, keyPostings);
+			} else {
+				// The same key can come up more than once for an event, e.g. two participants in the same cell.
+				ChunkedLog.Snapshot<Long> snapshot = keyPostings.snapshot();
+				if (snapshot.get(snapshot.end() - 1) == sequence) {
+					return;
+				}
+			}
+			keyPostings.append(sequence);
+		}
+
+
+		private void dropBefore(Collection<K> keys, long sequence) {
+			for (K key : keys) {
+				ChunkedLog<Long> keyPostings = postings.get(key);
+				if (keyPostings == null) {
+					continue;
+				}
+				ChunkedLog.Snapshot<Long> snapshot = keyPostings.snapshot();
+				long firstKept = findFirstPostingAtOrAfter(snapshot, sequence);
+				if (firstKept == snapshot.end()) {
+					postings.remove(key);
+				} else {
+					keyPostings.dropBefore(firstKept);
+				}
+			}
+		}
+
+
+		private ChunkedLog.Snapshot<Long> get(K key) {
+			ChunkedLog<Long> keyPostings = postings.get(key);
+			return keyPostings != null ? keyPostings.snapshot() : null;
+		}
+
+
+		private Set<K> keys() {
+			return new HashSet<K>(postings.keySet());
+		}
+
+
+		private int size() {
+			return postings.size();
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package liberty_paintball.game;
+
+import liberty_paintball.game.events.Event.EventType;
+
+/**
+ * @author Dave Waddling
+ * 
+ * The criteria for a query of the Timeline. Every criterion which is set must match, those left as
+ * null match anything. Usernames match the player's Twitter username.
+ *
+ */
+public class TimelineQuery {
+
+	public static final int	DEFAULT_LIMIT	= 1000;
+
+	private String			attacker;
+	private String			participant;
+	private EventType		type;
+	private Long			fromMillis;
+	private Long			toMillis;
+	private Double			minLatitude;
+	private Double			minLongitude;
+	private Double			maxLatitude;
+	private Double			maxLongitude;
+	private int				limit			= DEFAULT_LIMIT;
+
+	public TimelineQuery() {
+
+	}
+
+
+	public String getAttacker() {
+		return attacker;
+	}
+
+
+	public void setAttacker(String attacker) {
+		this.attacker = attacker;
+	}
+
+
+	public String getParticipant() {
+		return participant;
+	}
+
+
+	public void setParticipant(String participant) {
+		this.participant = participant;
+	}
+
+
+	public EventType getType() {
+		return type;
+	}
+
+
+	public void setType(EventType type) {
+		this.type = type;
+	}
+
+
+	public Long getFromMillis() {
+		return fromMillis;
+	}
+
+
+	public void setFromMillis(Long fromMillis) {
+		this.fromMillis = fromMillis;
+	}
+
+
+	public Long getToMillis() {
+		return toMillis;
+	}
+
+
+	public void setToMillis(Long toMillis) {
+		this.toMillis = toMillis;
+	}
+
+
+	/**
+	 * Restricts the query to events inside the box. All four sides must be set for it to apply.
+	 */
+	public void setBoundingBox(Double minLatitude, Double minLongitude, Double maxLatitude, Double maxLongitude) {
+		this.minLatitude = minLatitude;
+		this.minLongitude = minLongitude;
+		this.maxLatitude = maxLatitude;
+		this.maxLongitude = maxLongitude;
+	}
+
+
+	public boolean hasBoundingBox() {
+		return minLatitude != null && minLongitude != null && maxLatitude != null && maxLongitude != null;
+	}
+
+
+	public Double getMinLatitude() {
+		return minLatitude;
+	}
+
+
+	public Double getMinLongitude() {
+		return minLongitude;
+	}
+
+
+	public Double getMaxLatitude() {
+		return maxLatitude;
+	}
+
+
+	public Double getMaxLongitude() {
+		return maxLongitude;
+	}
+
+
+	/**
+	 * The most events to return. When more match the latest are returned.
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+}
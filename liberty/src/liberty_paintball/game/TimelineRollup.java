@@ -0,0 +1,215 @@
+package liberty_paintball.game;
+
+import static java.lang.Math.floor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import liberty_paintball.game.events.Event.EventType;
+import liberty_paintball.mapping.MapPoint;
+import liberty_paintball.mapping.MapRollup;
+import liberty_paintball.mapping.RollupCell;
+import liberty_paintball.mapping.RollupPlayer;
+
+/**
+ * @author Dave Waddling
+ *
+ * Counts of the events dropped from a Timeline, by area of the map and by attacking player. The
+ * number of areas is capped so the rollup has a fixed upper size however long the game runs; events
+ * in new areas once the cap is reached are only counted in the overflow. Players are bounded by the
+ * number of names the NameGenerator has.
+ *
+ */
+class TimelineRollup {
+
+	// Roughly 100m along a meridian.
+	static final double					CELL_SIZE_DEGREES	= 0.001d;
+
+	private static final int			MAX_CELLS			= 10000;
+
+	private final Map<Long, long[]>		cellCounts;
+	private final Map<String, RollupPlayer>	playerCounts;
+	private final long[]				overflowCounts;
+	private long						rolledUpEventCount;
+	private final ReentrantLock			lock;
+
+
+	TimelineRollup() {
+		cellCounts = new HashMap<Long, long[]>();
+		playerCounts = new LinkedHashMap<String, RollupPlayer>();
+		overflowCounts = new long[EventType.values().length];
+		rolledUpEventCount = 0;
+		lock = new ReentrantLock();
+	}
+
+
+	void add(MapPoint mapPoint) {
+		lock.lock();
+		try {
+			int type = mapPoint.getType().ordinal();
+			rolledUpEventCount++;
+
+			Location location = mapPoint.getLocation();
+			if (location != null) {
+				long cellKey = cellKeyOf(location);
+				long[] counts = cellCounts.get(cellKey);
+				if (counts == null && cellCounts.size() < MAX_CELLS) {
+					counts = new long[overflowCounts.length];
+					cellCounts.put(cellKey, counts);
+				}
+				(counts != null ? counts : overflowCounts)[type]++;
+			} else {
+				overflowCounts[type]++;
+			}
+
+			PlayerIdentity attackerIdentity = mapPoint.getAttackerIdentity();
+			if (attackerIdentity != null) {
+				RollupPlayer player = playerCounts.get(attackerIdentity.getUsername());
+				if (player == null) {
+					player = new RollupPlayer(attackerIdentity, new long[overflowCounts.length]);
+					playerCounts.put(attackerIdentity.getUsername(), player);
+				}
+				player.getCounts()[type]++;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Returns a copy of the rollup as it is now, e.g. for a checkpoint.
+	 */
+	TimelineRollup copy() {
+		TimelineRollup copy = new TimelineRollup();
+		lock.lock();
+		try {
+			for (Map.Entry<Long, long[]> entryCellToCounts : cellCounts.entrySet()) {
+				copy.cellCounts.put(entryCellToCounts.getKey(), entryCellToCounts.getValue().clone());
+			}
+			for (RollupPlayer player : playerCounts.values()) {
+				copy.playerCounts.put(player.getIdentity().getUsername(), new RollupPlayer(player.getIdentity(), player.getCounts().clone()));
+			}
+			System.arraycopy(overflowCounts, 0, copy.overflowCounts, 0, overflowCounts.length);
+			copy.rolledUpEventCount = rolledUpEventCount;
+		} finally {
+			lock.unlock();
+		}
+		return copy;
+	}
+
+
+	/**
+	 * Writes the rollup to a checkpoint. Only for a copy no one else is using.
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.writeLong(rolledUpEventCount);
+		writeCounts(out, overflowCounts);
+		out.writeInt(cellCounts.size());
+		for (Map.Entry<Long, long[]> entryCellToCounts : cellCounts.entrySet()) {
+			out.writeLong(entryCellToCounts.getKey());
+			writeCounts(out, entryCellToCounts.getValue());
+		}
+		out.writeInt(playerCounts.size());
+		for (RollupPlayer player : playerCounts.values()) {
+			out.writeUTF(player.getIdentity().getUsername());
+			out.writeUTF(player.getIdentity().getGeneratedName());
+			out.writeUTF(player.getIdentity().getColorAsHexString());
+			writeCounts(out, player.getCounts());
+		}
+	}
+
+
+	static TimelineRollup readFrom(DataInput in) throws IOException {
+		TimelineRollup rollup = new TimelineRollup();
+		rollup.rolledUpEventCount = in.readLong();
+		readCounts(in, rollup.overflowCounts);
+		int cellCount = in.readInt();
+		for (int i = 0; i < cellCount; i++) {
+			long cellKey = in.readLong();
+			long[] counts = new long[rollup.overflowCounts.length];
+			readCounts(in, counts);
+			rollup.cellCounts.put(cellKey, counts);
+		}
+		int playerCount = in.readInt();
+		for (int i = 0; i < playerCount; i++) {
+			PlayerIdentity identity = new PlayerIdentity(in.readUTF(), in.readUTF(), in.readUTF());
+			long[] counts = new long[rollup.overflowCounts.length];
+			readCounts(in, counts);
+			rollup.playerCounts.put(identity.getUsername(), new RollupPlayer(identity, counts));
+		}
+		return rollup;
+	}
+
+
+	private static void writeCounts(DataOutput out, long[] counts) throws IOException {
+		for (long count : counts) {
+			out.writeLong(count);
+		}
+	}
+
+
+	private static void readCounts(DataInput in, long[] counts) throws IOException {
+		for (int type = 0; type < counts.length; type++) {
+			counts[type] = in.readLong();
+		}
+	}
+
+
+	int getCellCount() {
+		lock.lock();
+		try {
+			return cellCounts.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	long getRolledUpEventCount() {
+		lock.lock();
+		try {
+			return rolledUpEventCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	MapRollup toMapRollup(long retainedEventCount) {
+		lock.lock();
+		try {
+			List<RollupCell> cells = new ArrayList<RollupCell>(cellCounts.size());
+			for (Map.Entry<Long, long[]> entryCellToCounts : cellCounts.entrySet()) {
+				long cellKey = entryCellToCounts.getKey();
+				Location southWest = new Location((cellKey >> 32) * CELL_SIZE_DEGREES, ((int) cellKey) * CELL_SIZE_DEGREES);
+				cells.add(new RollupCell(southWest, CELL_SIZE_DEGREES, entryCellToCounts.getValue().clone()));
+			}
+			List<RollupPlayer> players = new ArrayList<RollupPlayer>(playerCounts.size());
+			for (RollupPlayer player : playerCounts.values()) {
+				players.add(new RollupPlayer(player.getIdentity(), player.getCounts().clone()));
+			}
+			return new MapRollup(cells, players, overflowCounts.clone(), rolledUpEventCount, retainedEventCount);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	static long cellKeyOf(Location location) {
+		return cellKeyOf((long) floor(location.getLatitude() / CELL_SIZE_DEGREES), (long) floor(location.getLongitude() / CELL_SIZE_DEGREES));
+	}
+
+
+	static long cellKeyOf(long row, long column) {
+		return (row << 32) | (column & 0xffffffffL);
+	}
+
+}
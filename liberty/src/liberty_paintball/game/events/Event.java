@@ -33,6 +33,14 @@ public abstract class Event {
 	}
 
 
+	/**
+	 * Sets the time the event occurred, for events replayed from the journal.
+	 */
+	public void setTimeOccurred(long timeOccurred) {
+		this.timeOccurred = timeOccurred;
+	}
+
+
 	public EventType getEventType() {
 		return type;
 	}
@@ -0,0 +1,675 @@
+package liberty_paintball.journal;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import liberty_paintball.game.Location;
+import liberty_paintball.game.PlayerIdentity;
+
+/**
+ * @author Dave Waddling
+ *
+ * A write-ahead journal of everything which changes a game, so the game can be rebuilt by replaying
+ * it after a restart. Records are appended to memory mapped segment files, each record framed by its
+ * length and a CRC so a record torn by a crash is detected and replay stops there.
+ *
+ * Appending a record is a copy into the mapped segment, the data is forced to disk by a background
+ * thread every so often (or after every record if the interval is zero). A crash of the server loses
+ * nothing, but a crash of the machine loses up to the last interval of records.
+ *
+ * A checkpoint of the whole game can be kept alongside the journal, along with the Position in the
+ * journal it was taken at. Only the records after that position then need to be replayed, and the
+ * segments before it are deleted.
+ *
+ */
+public class Journal {
+
+	private static final int			SEGMENT_SIZE		= 64 * 1024 * 1024;
+
+	private static final int			MAX_RECORD_SIZE		= 64 * 1024;
+
+	// Most records are a username and a location, so they fit without the buffer growing.
+	private static final int			INITIAL_RECORD_SIZE	= 128;
+
+	// Strings are written with a two byte length.
+	private static final int			MAX_STRING_SIZE		= 0xffff;
+
+	/**
+	 * The longest username, in UTF-8 bytes, which can be journaled. Every record holds at most a few
+	 * identities so keeping usernames to this keeps every record well under the maximum size, and
+	 * the game turns away players with longer usernames before anything about them changes.
+	 */
+	public static final int				MAX_USERNAME_SIZE	= 1024;
+
+	// Length and CRC.
+	private static final int			RECORD_HEADER_SIZE	= 8;
+
+	private static final String			SEGMENT_PREFIX		= "journal-";
+
+	private static final String			SEGMENT_SUFFIX		= ".log";
+
+	private static final String			CHECKPOINT_FILE		= "checkpoint.bin";
+
+	private static final String			CHECKPOINT_TEMP_FILE	= "checkpoint.bin.tmp";
+
+	private static final Charset		UTF_8				= Charset.forName("UTF-8");
+
+	private static final byte			RECORD_JOIN			= 1;
+	private static final byte			RECORD_LEAVE		= 2;
+	private static final byte			RECORD_LOCATION		= 3;
+	private static final byte			RECORD_HIT			= 4;
+	private static final byte			RECORD_OUTGUNNED	= 5;
+	private static final byte			RECORD_MISS			= 6;
+	private static final byte			RECORD_ELIMINATED	= 7;
+	private static final byte			RECORD_SCORE		= 8;
+
+	private final File					directory;
+	private final long					fsyncMillis;
+	private final ReentrantLock			appendLock;
+	private Segment						segment;
+	private long						nextSegmentNumber;
+	private long						firstSegmentNumber;
+	private boolean						isDirty;
+	private Thread						flusher;
+
+
+	public Journal(File directory, long fsyncMillis) {
+		this.directory = directory;
+		this.fsyncMillis = fsyncMillis;
+		this.appendLock = new ReentrantLock();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalStateException("Couldn't create the journal directory " + directory + ".");
+		}
+	}
+
+
+	/**
+	 * Replays every record in the journal from the given position, in the order they were written.
+	 */
+	public void replay(Replayer replayer, Position from) {
+		long recordCount = 0;
+		for (File segmentFile : listSegmentFiles()) {
+			long segmentNumber = segmentNumberOf(segmentFile);
+			nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber + 1);
+			if (segmentNumber < from.segmentNumber) {
+				continue;
+			}
+			try {
+				recordCount += replaySegment(segmentFile, segmentNumber == from.segmentNumber ? from.offset : 0, replayer);
+			} catch (IOException e) {
+				throw new IllegalStateException("Couldn't replay the journal segment " + segmentFile + ".", e);
+			}
+		}
+		System.out.println("INFO Replayed " + recordCount + " records from the journal in " + directory + ".");
+	}
+
+
+	/**
+	 * Starts appending to a new segment after any which were replayed.
+	 */
+	public void start() {
+		appendLock.lock();
+		try {
+			segment = new Segment(nextSegmentNumber++);
+		} finally {
+			appendLock.unlock();
+		}
+
+		if (fsyncMillis > 0) {
+			flusher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					flushPeriodically();
+				}
+			}, "liberty-paintball-journal-" + directory.getName());
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+		System.out.println("INFO Journaling to " + directory + ", forcing to disk every " + fsyncMillis + "ms.");
+	}
+
+
+	/**
+	 * Deletes every segment and the checkpoint and starts again, for when the game is reset.
+	 */
+	public void clear() {
+		appendLock.lock();
+		try {
+			segment.close();
+			deleteSegmentsBefore(nextSegmentNumber);
+			deleteFile(getCheckpointFile());
+			segment = new Segment(nextSegmentNumber++);
+			firstSegmentNumber = segment.number;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Returns the position the next record will be appended at.
+	 */
+	public Position getPosition() {
+		appendLock.lock();
+		try {
+			return new Position(segment.number, segment.position());
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+
+	public File getCheckpointFile() {
+		return new File(directory, CHECKPOINT_FILE);
+	}
+
+
+	/**
+	 * Returns where a new checkpoint should be written before it's installed.
+	 */
+	public File getCheckpointTempFile() {
+		return new File(directory, CHECKPOINT_TEMP_FILE);
+	}
+
+
+	/**
+	 * Replaces the checkpoint with one written to the temp file, which was taken at the given position,
+	 * and deletes the segments which are no longer needed. A checkpoint taken before the journal was
+	 * cleared is discarded.
+	 */
+	public boolean installCheckpoint(Position position) {
+		appendLock.lock();
+		try {
+			if (position.segmentNumber < firstSegmentNumber) {
+				deleteFile(getCheckpointTempFile());
+				return false;
+			}
+			try {
+				Files.move(getCheckpointTempFile().toPath(), getCheckpointFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				throw new IllegalStateException("Couldn't install the checkpoint in " + directory + ".", e);
+			}
+			deleteSegmentsBefore(position.segmentNumber);
+			return true;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+
+	private void deleteSegmentsBefore(long segmentNumber) {
+		for (File segmentFile : listSegmentFiles()) {
+			if (segmentNumberOf(segmentFile) < segmentNumber) {
+				deleteFile(segmentFile);
+			}
+		}
+	}
+
+
+	private static void deleteFile(File file) {
+		if (file.exists() && !file.delete()) {
+			System.out.println("WARNING Couldn't delete " + file + ".");
+		}
+	}
+
+
+	/**
+	 * Whether a player with the username can be journaled, which the game checks before they join.
+	 */
+	public static boolean isRecordable(String username) {
+		return username.getBytes(UTF_8).length <= MAX_USERNAME_SIZE;
+	}
+
+
+	public void recordJoin(PlayerIdentity identity) {
+		Record record = new Record(RECORD_JOIN);
+		record.putIdentity(identity);
+		append(record);
+	}
+
+
+	public void recordLeave(String username) {
+		Record record = new Record(RECORD_LEAVE);
+		record.putString(username);
+		append(record);
+	}
+
+
+	public void recordLocation(String username, Location location) {
+		Record record = new Record(RECORD_LOCATION);
+		record.putString(username);
+		record.putLocation(location);
+		append(record);
+	}
+
+
+	public void recordHit(PlayerIdentity attackerIdentity, Location location, PlayerIdentity victimIdentity, long timeOccurred) {
+		Record record = new Record(RECORD_HIT);
+		record.putIdentity(attackerIdentity);
+		record.putLocation(location);
+		record.putLong(timeOccurred);
+		record.putIdentity(victimIdentity);
+		append(record);
+	}
+
+
+	public void recordOutgunned(PlayerIdentity attackerIdentity, Location location, List<PlayerIdentity> outgunnerIdentities, long timeOccurred) {
+		Record record = new Record(RECORD_OUTGUNNED);
+		record.putIdentity(attackerIdentity);
+		record.putLocation(location);
+		record.putLong(timeOccurred);
+		record.putInt(outgunnerIdentities.size());
+		for (PlayerIdentity outgunnerIdentity : outgunnerIdentities) {
+			record.putIdentity(outgunnerIdentity);
+		}
+		append(record);
+	}
+
+
+	public void recordMiss(PlayerIdentity attackerIdentity, Location location, long timeOccurred) {
+		Record record = new Record(RECORD_MISS);
+		record.putIdentity(attackerIdentity);
+		record.putLocation(location);
+		record.putLong(timeOccurred);
+		append(record);
+	}
+
+
+	public void recordEliminated(String username) {
+		Record record = new Record(RECORD_ELIMINATED);
+		record.putString(username);
+		append(record);
+	}
+
+
+	public void recordScore(String username) {
+		Record record = new Record(RECORD_SCORE);
+		record.putString(username);
+		append(record);
+	}
+
+
+	private void append(Record record) {
+		// Fill in the header while not holding the lock.
+		ByteBuffer framedRecord = record.frame();
+
+		appendLock.lock();
+		try {
+			if (segment.remaining() < framedRecord.remaining() + RECORD_HEADER_SIZE) {
+				// Leaves a zero length at the end of the old segment, which is where replay stops.
+				segment.close();
+				segment = new Segment(nextSegmentNumber++);
+			}
+			segment.put(framedRecord);
+			if (fsyncMillis <= 0) {
+				segment.force();
+			} else {
+				isDirty = true;
+			}
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+
+	private void flushPeriodically() {
+		while (true) {
+			try {
+				Thread.sleep(fsyncMillis);
+			} catch (InterruptedException e) {
+				System.out.println("WARNING Journal flusher was interrupted. Stopping.");
+				return;
+			}
+
+			Segment dirtySegment = null;
+			appendLock.lock();
+			try {
+				if (isDirty) {
+					dirtySegment = segment;
+					isDirty = false;
+				}
+			} finally {
+				appendLock.unlock();
+			}
+			// Forced without the lock so appends carry on meanwhile.
+			if (dirtySegment != null) {
+				dirtySegment.force();
+			}
+		}
+	}
+
+
+	private long replaySegment(File segmentFile, int offset, Replayer replayer) throws IOException {
+		long recordCount = 0;
+		RandomAccessFile file = new RandomAccessFile(segmentFile, "r");
+		try {
+			ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			buffer.position(offset);
+			while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+				int bodyLength = buffer.getInt();
+				int expectedCrc = buffer.getInt();
+				if (bodyLength <= 0) {
+					break;
+				}
+				if (bodyLength > buffer.remaining()) {
+					System.out.println("WARNING Journal segment " + segmentFile + " ends with a torn record. Stopping replay of it there.");
+					break;
+				}
+
+				ByteBuffer body = buffer.slice();
+				body.limit(bodyLength);
+				CRC32 crc = new CRC32();
+				byte[] bodyBytes = new byte[bodyLength];
+				body.get(bodyBytes);
+				crc.update(bodyBytes, 0, bodyLength);
+				if ((int) crc.getValue() != expectedCrc) {
+					System.out.println("WARNING Journal segment " + segmentFile + " has a corrupt record. Stopping replay of it there.");
+					break;
+				}
+
+				replayRecord(ByteBuffer.wrap(bodyBytes), replayer);
+				buffer.position(buffer.position() + bodyLength);
+				recordCount++;
+			}
+		} finally {
+			file.close();
+		}
+		return recordCount;
+	}
+
+
+	private void replayRecord(ByteBuffer record, Replayer replayer) {
+		byte recordType = record.get();
+		switch (recordType) {
+		case RECORD_JOIN:
+			replayer.join(getIdentity(record));
+			break;
+		case RECORD_LEAVE:
+			replayer.leave(getString(record));
+			break;
+		case RECORD_LOCATION:
+			replayer.location(getString(record), getLocation(record));
+			break;
+		case RECORD_HIT:
+			replayer.hit(getIdentity(record), getLocation(record), record.getLong(), getIdentity(record));
+			break;
+		case RECORD_OUTGUNNED:
+			PlayerIdentity attackerIdentity = getIdentity(record);
+			Location location = getLocation(record);
+			long timeOccurred = record.getLong();
+			int outgunnerCount = record.getInt();
+			List<PlayerIdentity> outgunnerIdentities = new ArrayList<PlayerIdentity>(outgunnerCount);
+			for (int i = 0; i < outgunnerCount; i++) {
+				outgunnerIdentities.add(getIdentity(record));
+			}
+			replayer.outgunned(attackerIdentity, location, timeOccurred, outgunnerIdentities);
+			break;
+		case RECORD_MISS:
+			replayer.miss(getIdentity(record), getLocation(record), record.getLong());
+			break;
+		case RECORD_ELIMINATED:
+			replayer.eliminated(getString(record));
+			break;
+		case RECORD_SCORE:
+			replayer.score(getString(record));
+			break;
+		default:
+			System.out.println("WARNING Unknown journal record type " + recordType + ". Skipping it.");
+		}
+	}
+
+
+	private File[] listSegmentFiles() {
+		File[] segmentFiles = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if (segmentFiles == null) {
+			return new File[0];
+		}
+		// Segment numbers are zero padded so sorting by name sorts by number.
+		Arrays.sort(segmentFiles);
+		return segmentFiles;
+	}
+
+
+	private File segmentFile(long segmentNumber) {
+		return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+	}
+
+
+	private static long segmentNumberOf(File segmentFile) {
+		String name = segmentFile.getName();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+
+	private static String getString(ByteBuffer record) {
+		byte[] bytes = new byte[record.getShort() & 0xffff];
+		record.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+
+	private static PlayerIdentity getIdentity(ByteBuffer record) {
+		return new PlayerIdentity(getString(record), getString(record), getString(record));
+	}
+
+
+	private static Location getLocation(ByteBuffer record) {
+		Location location = new Location(record.getDouble(), record.getDouble());
+		location.setUpdatedTimeMillis(record.getLong());
+		return location;
+	}
+
+	/**
+	 * Applies the records read back from the journal to a game.
+	 */
+	public interface Replayer {
+
+		void join(PlayerIdentity identity);
+
+
+		void leave(String username);
+
+
+		void location(String username, Location location);
+
+
+		void hit(PlayerIdentity attackerIdentity, Location location, long timeOccurred, PlayerIdentity victimIdentity);
+
+
+		void outgunned(PlayerIdentity attackerIdentity, Location location, long timeOccurred, List<PlayerIdentity> outgunnerIdentities);
+
+
+		void miss(PlayerIdentity attackerIdentity, Location location, long timeOccurred);
+
+
+		void eliminated(String username);
+
+
+		void score(String username);
+
+	}
+
+	/**
+	 * A point in the journal, between two records.
+	 */
+	public static final class Position {
+
+		public static final Position	START	= new Position(0, 0);
+
+		private final long				segmentNumber;
+		private final int				offset;
+
+
+		public Position(long segmentNumber, int offset) {
+			this.segmentNumber = segmentNumber;
+			this.offset = offset;
+		}
+
+
+		public long getSegmentNumber() {
+			return segmentNumber;
+		}
+
+
+		public int getOffset() {
+			return offset;
+		}
+	}
+
+	/**
+	 * A record being built, in a buffer which starts small and grows as it's written to. Room for the
+	 * header is left at the start. A record which would grow past the maximum size is refused before
+	 * anything is appended to the journal.
+	 */
+	private static final class Record {
+
+		private ByteBuffer	buffer;
+
+
+		private Record(byte recordType) {
+			buffer = ByteBuffer.allocate(INITIAL_RECORD_SIZE);
+			buffer.position(RECORD_HEADER_SIZE);
+			buffer.put(recordType);
+		}
+
+
+		private void putInt(int value) {
+			ensureRemaining(4);
+			buffer.putInt(value);
+		}
+
+
+		private void putLong(long value) {
+			ensureRemaining(8);
+			buffer.putLong(value);
+		}
+
+
+		private void putString(String value) {
+			byte[] bytes = value.getBytes(UTF_8);
+			if (bytes.length > MAX_STRING_SIZE) {
+				throw new IllegalArgumentException("Journal record is too large.");
+			}
+			ensureRemaining(2 + bytes.length);
+			buffer.putShort((short) bytes.length);
+			buffer.put(bytes);
+		}
+
+
+		private void putIdentity(PlayerIdentity identity) {
+			putString(identity.getUsername());
+			putString(identity.getGeneratedName());
+			putString(identity.getColorAsHexString());
+		}
+
+
+		private void putLocation(Location location) {
+			ensureRemaining(24);
+			buffer.putDouble(location.getLatitude());
+			buffer.putDouble(location.getLongitude());
+			buffer.putLong(location.getUpdatedTimeMillis());
+		}
+
+
+		private void ensureRemaining(int size) {
+			if (buffer.remaining() >= size) {
+				return;
+			}
+			int required = buffer.position() + size;
+			if (required - RECORD_HEADER_SIZE > MAX_RECORD_SIZE) {
+				throw new IllegalArgumentException("Journal record is too large.");
+			}
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2));
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+
+
+		/**
+		 * Fills in the length and CRC and returns the whole record, ready to be appended.
+		 */
+		private ByteBuffer frame() {
+			int bodyLength = buffer.position() - RECORD_HEADER_SIZE;
+			CRC32 crc = new CRC32();
+			crc.update(buffer.array(), RECORD_HEADER_SIZE, bodyLength);
+			buffer.putInt(0, bodyLength);
+			buffer.putInt(4, (int) crc.getValue());
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * A preallocated segment file mapped into memory.
+	 */
+	private final class Segment {
+
+		private final long				number;
+		private final File				file;
+		private final RandomAccessFile	randomAccessFile;
+		private final MappedByteBuffer	buffer;
+
+
+		private Segment(long number) {
+			this.number = number;
+			this.file = segmentFile(number);
+			try {
+				randomAccessFile = new RandomAccessFile(file, "rw");
+				randomAccessFile.setLength(SEGMENT_SIZE);
+				buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+			} catch (IOException e) {
+				throw new IllegalStateException("Couldn't create the journal segment " + file + ".", e);
+			}
+		}
+
+
+		private int remaining() {
+			return buffer.remaining();
+		}
+
+
+		private int position() {
+			return buffer.position();
+		}
+
+
+		private void put(ByteBuffer record) {
+			buffer.put(record);
+		}
+
+
+		private void force() {
+			buffer.force();
+		}
+
+
+		private void close() {
+			force();
+			try {
+				randomAccessFile.close();
+			} catch (IOException e) {
+				System.out.println("WARNING Couldn't close the journal segment " + file + ": " + e);
+			}
+		}
+	}
+
+}
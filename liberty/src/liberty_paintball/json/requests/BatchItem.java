@@ -0,0 +1,75 @@
+package liberty_paintball.json.requests;
+
+/**
+ * @author Dave Waddling
+ * 
+ * One action in a batch. The type says which action it is, and only the fields used by that action
+ * need to be set (join and leave only need the username).
+ *
+ */
+public class BatchItem {
+
+	public static final String	TYPE_JOIN	= "join";
+	public static final String	TYPE_LEAVE	= "leave";
+	public static final String	TYPE_UPDATE	= "update";
+	public static final String	TYPE_ATTACK	= "attack";
+
+	private String				type;
+	private String				username;
+	private double				latitude;
+	private double				longitude;
+
+
+	public BatchItem() {
+
+	}
+
+
+	public BatchItem(String type, String username, double latitude, double longitude) {
+		this.type = type;
+		this.username = username;
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+
+	public String getType() {
+		return type;
+	}
+
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+
+	public String getUsername() {
+		return username;
+	}
+
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+
+	public void setLatitude(double latitude) {
+		this.latitude = latitude;
+	}
+
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+
+	public void setLongitude(double longitude) {
+		this.longitude = longitude;
+	}
+
+}
@@ -0,0 +1,58 @@
+package liberty_paintball.json.responses;
+
+/**
+ * @author Dave Waddling
+ * 
+ * The result of one action in a batch, in the same position as the action. Joins have a join response
+ * and attacks have an attack response, while leaves and location updates have neither.
+ *
+ */
+public class BatchItemResponse {
+
+	private String			type;
+	private JoinResponse	joinResponse;
+	private AttackResponse	attackResponse;
+
+
+	public BatchItemResponse() {
+
+	}
+
+
+	public BatchItemResponse(String type, JoinResponse joinResponse, AttackResponse attackResponse) {
+		this.type = type;
+		this.joinResponse = joinResponse;
+		this.attackResponse = attackResponse;
+	}
+
+
+	public String getType() {
+		return type;
+	}
+
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+
+	public JoinResponse getJoinResponse() {
+		return joinResponse;
+	}
+
+
+	public void setJoinResponse(JoinResponse joinResponse) {
+		this.joinResponse = joinResponse;
+	}
+
+
+	public AttackResponse getAttackResponse() {
+		return attackResponse;
+	}
+
+
+	public void setAttackResponse(AttackResponse attackResponse) {
+		this.attackResponse = attackResponse;
+	}
+
+}
@@ -0,0 +1,97 @@
+package liberty_paintball.mapping;
+
+/**
+ * @author Dave Waddling
+ * 
+ * The number of each type of event in a map tile, using the usual web map tile numbering at the
+ * zoom level. The tile is divided into a grid of cells, numbered row by row from the north west.
+ * 
+ * Counts are indexed by EventType ordinal, and for each type only the cells with events are listed,
+ * as pairs of cell number and count, i.e. [cell, count, cell, count, ...]. The minutes are how far
+ * back the counts go, or 0 for the whole game.
+ *
+ */
+public class HeatmapTile {
+
+	private int		zoom;
+	private int		x;
+	private int		y;
+	private int		cellsPerSide;
+	private int		minutes;
+	private int[][]	counts;
+
+
+	public HeatmapTile() {
+	}
+
+
+	public HeatmapTile(int zoom, int x, int y, int cellsPerSide, int minutes, int[][] counts) {
+		this.zoom = zoom;
+		this.x = x;
+		this.y = y;
+		this.cellsPerSide = cellsPerSide;
+		this.minutes = minutes;
+		this.counts = counts;
+	}
+
+
+	public int getZoom() {
+		return zoom;
+	}
+
+
+	public void setZoom(int zoom) {
+		this.zoom = zoom;
+	}
+
+
+	public int getX() {
+		return x;
+	}
+
+
+	public void setX(int x) {
+		this.x = x;
+	}
+
+
+	public int getY() {
+		return y;
+	}
+
+
+	public void setY(int y) {
+		this.y = y;
+	}
+
+
+	public int getCellsPerSide() {
+		return cellsPerSide;
+	}
+
+
+	public void setCellsPerSide(int cellsPerSide) {
+		this.cellsPerSide = cellsPerSide;
+	}
+
+
+	public int getMinutes() {
+		return minutes;
+	}
+
+
+	public void setMinutes(int minutes) {
+		this.minutes = minutes;
+	}
+
+
+	public int[][] getCounts() {
+		return counts;
+	}
+
+
+	public void setCounts(int[][] counts) {
+		this.counts = counts;
+	}
+
+}
@@ -0,0 +1,66 @@
+package liberty_paintball.mapping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import liberty_paintball.game.PlayerIdentity;
+
+/**
+ * @author Dave Waddling
+ *
+ * The player identities referred to by a list of map points, each given an index the first time
+ * it's seen, so a response can send every identity once and have map points refer to them by index.
+ *
+ * The same player's identity is usually the same object, so identities are looked up by object
+ * first and only compared by value when one hasn't been seen before.
+ *
+ */
+final class IdentityDictionary {
+
+	private final List<PlayerIdentity>			identities	= new ArrayList<PlayerIdentity>();
+	private final Map<PlayerIdentity, Integer>	byObject	= new IdentityHashMap<PlayerIdentity, Integer>();
+	private final Map<String, Integer>			byValue		= new HashMap<String, Integer>();
+
+
+	void addAll(List<MapPoint> mapData) {
+		for (MapPoint mapPoint : mapData) {
+			if (mapPoint.getAttackerIdentity() != null) {
+				add(mapPoint.getAttackerIdentity());
+			}
+			if (mapPoint.getParticipantIdentities() != null) {
+				for (PlayerIdentity participantIdentity : mapPoint.getParticipantIdentities()) {
+					add(participantIdentity);
+				}
+			}
+		}
+	}
+
+
+	private void add(PlayerIdentity identity) {
+		if (byObject.containsKey(identity)) {
+			return;
+		}
+		String value = identity.getUsername() + '\0' + identity.getGeneratedName() + '\0' + identity.getColorAsHexString();
+		Integer index = byValue.get(value);
+		if (index == null) {
+			index = identities.size();
+			identities.add(identity);
+			byValue.put(value, index);
+		}
+		byObject.put(identity, index);
+	}
+
+
+	List<PlayerIdentity> getIdentities() {
+		return identities;
+	}
+
+
+	int indexOf(PlayerIdentity identity) {
+		return byObject.get(identity);
+	}
+
+}
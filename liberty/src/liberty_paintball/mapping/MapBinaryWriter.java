@@ -0,0 +1,183 @@
+package liberty_paintball.mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import liberty_paintball.game.Location;
+import liberty_paintball.game.PlayerIdentity;
+
+/**
+ * @author Dave Waddling
+ *
+ * Writes map data in a compact binary form for clients on slow links, served instead of JSON when
+ * the request's Accept header names MEDIA_TYPE_MAP_BINARY. Every player identity is written once in
+ * a table at the start and map points refer to it by index, times are the difference from the
+ * previous map point and coordinates are fixed point to 1e-7 of a degree (about a centimetre), also
+ * the difference from the previous map point's.
+ *
+ * The layout, where varints are unsigned LEB128 and svarints are zigzag encoded varints:
+ *
+ * <pre>
+ * byte     FORMAT_VERSION
+ * byte     flags: FLAG_DELTA if it's a MapDelta, followed by
+ *   varint   cursor
+ * varint   identity count, then for each identity
+ *   string   username, generatedName, colorAsHexString
+ * varint   map point count, then for each map point
+ *   byte     EventType ordinal
+ *   byte     flags: POINT_* for each of the fields below which are there
+ *   svarint  timeOccurred less the previous map point's (or 0)
+ *   svarint  latitude less the previous location's, svarint longitude likewise,
+ *            svarint updatedTimeMillis less timeOccurred
+ *   varint   attacker's identity index
+ *   varint   participant count, then varint identity index for each
+ *   string   message
+ * </pre>
+ *
+ * Strings are a varint of their UTF-8 length plus one, so that null is 0, followed by the bytes.
+ *
+ */
+public final class MapBinaryWriter {
+
+	public static final int			FORMAT_VERSION		= 1;
+
+	public static final int			FLAG_DELTA			= 1;
+
+	public static final int			POINT_LOCATION		= 1;
+	public static final int			POINT_ATTACKER		= 2;
+	public static final int			POINT_PARTICIPANTS	= 4;
+	public static final int			POINT_MESSAGE		= 8;
+
+	public static final double		COORDINATE_SCALE	= 1e7;
+
+	private static final Charset	UTF_8				= Charset.forName("UTF-8");
+
+	private static final int		BUFFER_SIZE			= 8 * 1024;
+
+	private final OutputStream		out;
+
+
+	public MapBinaryWriter(OutputStream out) {
+		this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+
+	/**
+	 * Writes the map points followed by the players' locations as one list, as a MapDelta when
+	 * there's a cursor.
+	 */
+	public void writeMapData(Long cursor, List<MapPoint> mapData, List<MapPoint> playerLocations) throws IOException {
+		out.write(FORMAT_VERSION);
+		if (cursor != null) {
+			out.write(FLAG_DELTA);
+			writeVarint(cursor);
+		} else {
+			out.write(0);
+		}
+
+		IdentityDictionary identities = new IdentityDictionary();
+		identities.addAll(mapData);
+		identities.addAll(playerLocations);
+		writeVarint(identities.getIdentities().size());
+		for (PlayerIdentity identity : identities.getIdentities()) {
+			writeString(identity.getUsername());
+			writeString(identity.getGeneratedName());
+			writeString(identity.getColorAsHexString());
+		}
+
+		writeVarint(mapData.size() + playerLocations.size());
+		PreviousPoint previous = new PreviousPoint();
+		for (MapPoint mapPoint : mapData) {
+			writeMapPoint(mapPoint, identities, previous);
+		}
+		for (MapPoint mapPoint : playerLocations) {
+			writeMapPoint(mapPoint, identities, previous);
+		}
+		out.flush();
+	}
+
+
+	private void writeMapPoint(MapPoint mapPoint, IdentityDictionary identities, PreviousPoint previous) throws IOException {
+		Location location = mapPoint.getLocation();
+		PlayerIdentity[] participantIdentities = mapPoint.getParticipantIdentities();
+		int flags = 0;
+		if (location != null) {
+			flags |= POINT_LOCATION;
+		}
+		if (mapPoint.getAttackerIdentity() != null) {
+			flags |= POINT_ATTACKER;
+		}
+		if (participantIdentities != null) {
+			flags |= POINT_PARTICIPANTS;
+		}
+		if (mapPoint.getMessage() != null) {
+			flags |= POINT_MESSAGE;
+		}
+		out.write(mapPoint.getType().ordinal());
+		out.write(flags);
+
+		writeSignedVarint(mapPoint.getTimeOccurred() - previous.timeOccurred);
+		previous.timeOccurred = mapPoint.getTimeOccurred();
+
+		if (location != null) {
+			long latitude = Math.round(location.getLatitude() * COORDINATE_SCALE);
+			long longitude = Math.round(location.getLongitude() * COORDINATE_SCALE);
+			writeSignedVarint(latitude - previous.latitude);
+			writeSignedVarint(longitude - previous.longitude);
+			writeSignedVarint(location.getUpdatedTimeMillis() - mapPoint.getTimeOccurred());
+			previous.latitude = latitude;
+			previous.longitude = longitude;
+		}
+		if (mapPoint.getAttackerIdentity() != null) {
+			writeVarint(identities.indexOf(mapPoint.getAttackerIdentity()));
+		}
+		if (participantIdentities != null) {
+			writeVarint(participantIdentities.length);
+			for (PlayerIdentity participantIdentity : participantIdentities) {
+				writeVarint(identities.indexOf(participantIdentity));
+			}
+		}
+		if (mapPoint.getMessage() != null) {
+			writeString(mapPoint.getMessage());
+		}
+	}
+
+
+	private void writeSignedVarint(long value) throws IOException {
+		writeVarint((value << 1) ^ (value >> 63));
+	}
+
+
+	private void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+
+	private void writeString(String value) throws IOException {
+		if (value == null) {
+			writeVarint(0);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF_8);
+		writeVarint(bytes.length + 1);
+		out.write(bytes);
+	}
+
+	/**
+	 * The values the next map point's are written as differences from.
+	 */
+	private static final class PreviousPoint {
+
+		private long	timeOccurred;
+		private long	latitude;
+		private long	longitude;
+	}
+
+}
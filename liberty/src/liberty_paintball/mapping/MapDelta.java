@@ -0,0 +1,48 @@
+package liberty_paintball.mapping;
+
+import java.util.List;
+
+/**
+ * @author Dave Waddling
+ * 
+ * The map points added since a cursor, along with the cursor to ask for the next lot from. Cursors
+ * are made by the Timeline from its id and an event sequence number, so a cursor from a game which
+ * has since been reset gets the whole map again along with a cursor for the new game.
+ *
+ */
+public class MapDelta {
+
+	private long			cursor;
+	private List<MapPoint>	mapPoints;
+
+
+	public MapDelta() {
+	}
+
+
+	public MapDelta(long cursor, List<MapPoint> mapPoints) {
+		this.cursor = cursor;
+		this.mapPoints = mapPoints;
+	}
+
+
+	public long getCursor() {
+		return cursor;
+	}
+
+
+	public void setCursor(long cursor) {
+		this.cursor = cursor;
+	}
+
+
+	public List<MapPoint> getMapPoints() {
+		return mapPoints;
+	}
+
+
+	public void setMapPoints(List<MapPoint> mapPoints) {
+		this.mapPoints = mapPoints;
+	}
+
+}
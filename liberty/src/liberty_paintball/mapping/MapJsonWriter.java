@@ -0,0 +1,433 @@
+package liberty_paintball.mapping;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import liberty_paintball.game.Location;
+import liberty_paintball.game.PlayerIdentity;
+import liberty_paintball.game.events.Event.EventType;
+
+/**
+ * @author Dave Waddling
+ * 
+ * Writes map data as JSON straight to a stream, in the same form the JSON provider produces for a
+ * list of MapPoint objects or a MapDelta, so the map can be streamed without first building a list
+ * of it. Players' locations are written from their identity and location without making a MapPoint.
+ *
+ * A map point can also be serialized on its own with toJson() and the bytes written later with
+ * writeMapPointJson(), which is how the timeline avoids serializing the same event more than once.
+ * writeDictionaryMapData() writes the smaller form where each identity is only written once.
+ *
+ */
+public final class MapJsonWriter {
+
+	private static final Charset	UTF_8				= Charset.forName("UTF-8");
+
+	private static final int		BUFFER_SIZE			= 8 * 1024;
+
+	private static final int		MAP_POINT_SIZE		= 384;
+
+	private static final byte[]		NULL				= ascii("null");
+
+	// Written from the stream's buffer in one go; the OutputStream is only
+	// null when serializing a single map point into the buffer.
+	private final OutputStream		out;
+	private byte[]					buffer;
+	private int						size;
+	private final byte[]			digits				= new byte[20];
+	private boolean					isFirstInList;
+
+
+	public MapJsonWriter(OutputStream out) {
+		this.out = out;
+		buffer = new byte[BUFFER_SIZE];
+	}
+
+
+	private MapJsonWriter() {
+		out = null;
+		buffer = new byte[MAP_POINT_SIZE];
+	}
+
+
+	/**
+	 * Returns the JSON for a single map point, for writing later with writeMapPointJson().
+	 */
+	public static byte[] toJson(MapPoint mapPoint) {
+		MapJsonWriter writer = new MapJsonWriter();
+		try {
+			writer.writeMapPointBody(mapPoint);
+		} catch (IOException e) {
+			// Can't happen when writing to the buffer.
+			throw new IllegalStateException(e);
+		}
+		return Arrays.copyOf(writer.buffer, writer.size);
+	}
+
+
+	/**
+	 * Starts a list of map points.
+	 */
+	public void startList() throws IOException {
+		write('[');
+		isFirstInList = true;
+	}
+
+
+	public void endList() throws IOException {
+		write(']');
+	}
+
+
+	/**
+	 * Starts a MapDelta, followed by its list of map points.
+	 */
+	public void startDelta(long cursor) throws IOException {
+		write("{\"cursor\":");
+		writeLong(cursor);
+		write(",\"mapPoints\":");
+		startList();
+	}
+
+
+	public void endDelta() throws IOException {
+		endList();
+		write('}');
+	}
+
+
+	public void writeMapPoints(List<MapPoint> mapPoints) throws IOException {
+		for (MapPoint mapPoint : mapPoints) {
+			writeMapPoint(mapPoint);
+		}
+	}
+
+
+	public void writeMapPoint(MapPoint mapPoint) throws IOException {
+		startElement();
+		writeMapPointBody(mapPoint);
+	}
+
+
+	/**
+	 * Writes a map point which was serialized with toJson().
+	 */
+	public void writeMapPointJson(byte[] json) throws IOException {
+		startElement();
+		write(json, 0, json.length);
+	}
+
+
+	/**
+	 * Writes the map points followed by the players' locations with each identity only written once,
+	 * in a dictionary which the map points refer to by index:
+	 *
+	 * <pre>
+	 * {"cursor":..., "identities":[{PlayerIdentity}, ...],
+	 *  "mapPoints":[{"type":..., "timeOccurred":..., "location":{...}, "attacker":0, "participants":[1, 2], "message":...}, ...]}
+	 * </pre>
+	 *
+	 * The cursor is only there for a MapDelta. Fields of a map point which are null are left out, as is
+	 * the location's updatedTimeMillis when it's the same as timeOccurred, which it nearly always is.
+	 */
+	public void writeDictionaryMapData(Long cursor, List<MapPoint> mapData, List<MapPoint> playerLocations) throws IOException {
+		IdentityDictionary identities = new IdentityDictionary();
+		identities.addAll(mapData);
+		identities.addAll(playerLocations);
+
+		write('{');
+		if (cursor != null) {
+			write("\"cursor\":");
+			writeLong(cursor);
+			write(',');
+		}
+		write("\"identities\":");
+		startList();
+		for (PlayerIdentity identity : identities.getIdentities()) {
+			startElement();
+			writeIdentity(identity);
+		}
+		endList();
+		write(",\"mapPoints\":");
+		startList();
+		for (MapPoint mapPoint : mapData) {
+			writeDictionaryMapPoint(mapPoint, identities);
+		}
+		for (MapPoint mapPoint : playerLocations) {
+			writeDictionaryMapPoint(mapPoint, identities);
+		}
+		endList();
+		write('}');
+		flush();
+	}
+
+
+	/**
+	 * Writes a player's latest location, as a LOCATION_UPDATE map point.
+	 */
+	public void writePlayerLocation(PlayerIdentity identity, Location location) throws IOException {
+		startElement();
+		startMapPoint(EventType.LOCATION_UPDATE, location.getUpdatedTimeMillis(), location, identity);
+		write(",\"participantIdentities\":null,\"message\":null}");
+	}
+
+
+	public void flush() throws IOException {
+		out.write(buffer, 0, size);
+		size = 0;
+		out.flush();
+	}
+
+
+	private void startElement() throws IOException {
+		if (!isFirstInList) {
+			write(',');
+		}
+		isFirstInList = false;
+	}
+
+
+	private void writeMapPointBody(MapPoint mapPoint) throws IOException {
+		startMapPoint(mapPoint.getType(), mapPoint.getTimeOccurred(), mapPoint.getLocation(), mapPoint.getAttackerIdentity());
+		write(",\"participantIdentities\":");
+		PlayerIdentity[] participantIdentities = mapPoint.getParticipantIdentities();
+		if (participantIdentities == null) {
+			write(NULL, 0, NULL.length);
+		} else {
+			write('[');
+			for (int i = 0; i < participantIdentities.length; i++) {
+				if (i > 0) {
+					write(',');
+				}
+				writeIdentity(participantIdentities[i]);
+			}
+			write(']');
+		}
+		write(",\"message\":");
+		writeString(mapPoint.getMessage());
+		write('}');
+	}
+
+
+	private void writeDictionaryMapPoint(MapPoint mapPoint, IdentityDictionary identities) throws IOException {
+		startElement();
+		write("{\"type\":");
+		writeString(mapPoint.getType() == null ? null : mapPoint.getType().name());
+		write(",\"timeOccurred\":");
+		writeLong(mapPoint.getTimeOccurred());
+		Location location = mapPoint.getLocation();
+		if (location != null) {
+			write(",\"location\":{\"latitude\":");
+			write(Double.toString(location.getLatitude()));
+			write(",\"longitude\":");
+			write(Double.toString(location.getLongitude()));
+			if (location.getUpdatedTimeMillis() != mapPoint.getTimeOccurred()) {
+				write(",\"updatedTimeMillis\":");
+				writeLong(location.getUpdatedTimeMillis());
+			}
+			write('}');
+		}
+		if (mapPoint.getAttackerIdentity() != null) {
+			write(",\"attacker\":");
+			writeLong(identities.indexOf(mapPoint.getAttackerIdentity()));
+		}
+		PlayerIdentity[] participantIdentities = mapPoint.getParticipantIdentities();
+		if (participantIdentities != null) {
+			write(",\"participants\":[");
+			for (int i = 0; i < participantIdentities.length; i++) {
+				if (i > 0) {
+					write(',');
+				}
+				writeLong(identities.indexOf(participantIdentities[i]));
+			}
+			write(']');
+		}
+		if (mapPoint.getMessage() != null) {
+			write(",\"message\":");
+			writeString(mapPoint.getMessage());
+		}
+		write('}');
+	}
+
+
+	private void startMapPoint(EventType type, long timeOccurred, Location location, PlayerIdentity attackerIdentity) throws IOException {
+		write("{\"type\":");
+		writeString(type == null ? null : type.name());
+		write(",\"timeOccurred\":");
+		writeLong(timeOccurred);
+		write(",\"location\":");
+		if (location == null) {
+			write(NULL, 0, NULL.length);
+		} else {
+			write("{\"latitude\":");
+			write(Double.toString(location.getLatitude()));
+			write(",\"longitude\":");
+			write(Double.toString(location.getLongitude()));
+			write(",\"updatedTimeMillis\":");
+			writeLong(location.getUpdatedTimeMillis());
+			write('}');
+		}
+		write(",\"attackerIdentity\":");
+		writeIdentity(attackerIdentity);
+	}
+
+
+	private void writeIdentity(PlayerIdentity identity) throws IOException {
+		if (identity == null) {
+			write(NULL, 0, NULL.length);
+			return;
+		}
+		write("{\"username\":");
+		writeString(identity.getUsername());
+		write(",\"generatedName\":");
+		writeString(identity.getGeneratedName());
+		write(",\"colorAsHexString\":");
+		writeString(identity.getColorAsHexString());
+		write('}');
+	}
+
+
+	/**
+	 * Writes the number without making a string of it, as the map is mostly times.
+	 */
+	private void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			write(Long.toString(value));
+			return;
+		}
+		boolean isNegative = value < 0;
+		long remaining = isNegative ? -value : value;
+		int start = digits.length;
+		do {
+			digits[--start] = (byte) ('0' + remaining % 10);
+			remaining /= 10;
+		} while (remaining != 0);
+		if (isNegative) {
+			digits[--start] = '-';
+		}
+		write(digits, start, digits.length - start);
+	}
+
+
+	private void writeString(String value) throws IOException {
+		if (value == null) {
+			write(NULL, 0, NULL.length);
+			return;
+		}
+		write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				write("\\\"");
+				break;
+			case '\\':
+				write("\\\\");
+				break;
+			case '\n':
+				write("\\n");
+				break;
+			case '\r':
+				write("\\r");
+				break;
+			case '\t':
+				write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					write(String.format("\\u%04x", (int) c));
+				} else if (c < 0x80) {
+					write((byte) c);
+				} else {
+					// Names and messages are nearly always ASCII, so only the rest of a string
+					// which isn't goes through the encoder.
+					writeNonAscii(value, i);
+					return;
+				}
+			}
+		}
+		write('"');
+	}
+
+
+	private void writeNonAscii(String value, int from) throws IOException {
+		StringBuilder escaped = new StringBuilder(value.length() - from);
+		for (int i = from; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if (c < 0x20) {
+				escaped.append(String.format("\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		byte[] bytes = escaped.toString().getBytes(UTF_8);
+		write(bytes, 0, bytes.length);
+		write('"');
+	}
+
+
+	/**
+	 * Writes a string known to be ASCII, which is every literal and number written here.
+	 */
+	private void write(String ascii) throws IOException {
+		ensureSpace(ascii.length());
+		for (int i = 0; i < ascii.length(); i++) {
+			buffer[size++] = (byte) ascii.charAt(i);
+		}
+	}
+
+
+	private void write(char ascii) throws IOException {
+		write((byte) ascii);
+	}
+
+
+	private void write(byte value) throws IOException {
+		ensureSpace(1);
+		buffer[size++] = value;
+	}
+
+
+	private void write(byte[] bytes, int offset, int length) throws IOException {
+		if (out != null && length > buffer.length) {
+			out.write(buffer, 0, size);
+			size = 0;
+			out.write(bytes, offset, length);
+			return;
+		}
+		ensureSpace(length);
+		System.arraycopy(bytes, offset, buffer, size, length);
+		size += length;
+	}
+
+
+	private void ensureSpace(int length) throws IOException {
+		if (size + length <= buffer.length) {
+			return;
+		}
+		if (out == null) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+		} else {
+			out.write(buffer, 0, size);
+			size = 0;
+			if (length > buffer.length) {
+				buffer = new byte[length];
+			}
+		}
+	}
+
+
+	private static byte[] ascii(String value) {
+		byte[] bytes = new byte[value.length()];
+		for (int i = 0; i < value.length(); i++) {
+			bytes[i] = (byte) value.charAt(i);
+		}
+		return bytes;
+	}
+
+}
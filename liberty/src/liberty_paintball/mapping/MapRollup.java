@@ -0,0 +1,86 @@
+package liberty_paintball.mapping;
+
+import java.util.List;
+
+/**
+ * @author Dave Waddling
+ * 
+ * A summary of the events which have been dropped from the timeline once they were too old to keep,
+ * counted by area of the map and by player, along with how much of the timeline is still kept.
+ *
+ */
+public class MapRollup {
+
+	private List<RollupCell>	cells;
+	private List<RollupPlayer>	players;
+	private long[]				overflowCounts;
+	private long				rolledUpEventCount;
+	private long				retainedEventCount;
+
+
+	public MapRollup() {
+	}
+
+
+	public MapRollup(List<RollupCell> cells, List<RollupPlayer> players, long[] overflowCounts, long rolledUpEventCount, long retainedEventCount) {
+		this.cells = cells;
+		this.players = players;
+		this.overflowCounts = overflowCounts;
+		this.rolledUpEventCount = rolledUpEventCount;
+		this.retainedEventCount = retainedEventCount;
+	}
+
+
+	public List<RollupCell> getCells() {
+		return cells;
+	}
+
+
+	public void setCells(List<RollupCell> cells) {
+		this.cells = cells;
+	}
+
+
+	public List<RollupPlayer> getPlayers() {
+		return players;
+	}
+
+
+	public void setPlayers(List<RollupPlayer> players) {
+		this.players = players;
+	}
+
+
+	/**
+	 * Counts by EventType ordinal of events in areas which didn't fit in the cell budget.
+	 */
+	public long[] getOverflowCounts() {
+		return overflowCounts;
+	}
+
+
+	public void setOverflowCounts(long[] overflowCounts) {
+		this.overflowCounts = overflowCounts;
+	}
+
+
+	public long getRolledUpEventCount() {
+		return rolledUpEventCount;
+	}
+
+
+	public void setRolledUpEventCount(long rolledUpEventCount) {
+		this.rolledUpEventCount = rolledUpEventCount;
+	}
+
+
+	public long getRetainedEventCount() {
+		return retainedEventCount;
+	}
+
+
+	public void setRetainedEventCount(long retainedEventCount) {
+		this.retainedEventCount = retainedEventCount;
+	}
+
+}
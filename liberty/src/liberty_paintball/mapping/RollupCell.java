@@ -0,0 +1,59 @@
+package liberty_paintball.mapping;
+
+import liberty_paintball.game.Location;
+
+/**
+ * @author Dave Waddling
+ * 
+ * The number of each type of event which happened in an area of the map, indexed by EventType ordinal.
+ * The location is the south west corner of the area.
+ *
+ */
+public class RollupCell {
+
+	private Location	location;
+	private double		sizeDegrees;
+	private long[]		counts;
+
+
+	public RollupCell() {
+	}
+
+
+	public RollupCell(Location location, double sizeDegrees, long[] counts) {
+		this.location = location;
+		this.sizeDegrees = sizeDegrees;
+		this.counts = counts;
+	}
+
+
+	public Location getLocation() {
+		return location;
+	}
+
+
+	public void setLocation(Location location) {
+		this.location = location;
+	}
+
+
+	public double getSizeDegrees() {
+		return sizeDegrees;
+	}
+
+
+	public void setSizeDegrees(double sizeDegrees) {
+		this.sizeDegrees = sizeDegrees;
+	}
+
+
+	public long[] getCounts() {
+		return counts;
+	}
+
+
+	public void setCounts(long[] counts) {
+		this.counts = counts;
+	}
+
+}
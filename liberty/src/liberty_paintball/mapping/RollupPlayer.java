@@ -0,0 +1,46 @@
+package liberty_paintball.mapping;
+
+import liberty_paintball.game.PlayerIdentity;
+
+/**
+ * @author Dave Waddling
+ * 
+ * The number of attacks a player made of each outcome, indexed by EventType ordinal.
+ *
+ */
+public class RollupPlayer {
+
+	private PlayerIdentity	identity;
+	private long[]			counts;
+
+
+	public RollupPlayer() {
+	}
+
+
+	public RollupPlayer(PlayerIdentity identity, long[] counts) {
+		this.identity = identity;
+		this.counts = counts;
+	}
+
+
+	public PlayerIdentity getIdentity() {
+		return identity;
+	}
+
+
+	public void setIdentity(PlayerIdentity identity) {
+		this.identity = identity;
+	}
+
+
+	public long[] getCounts() {
+		return counts;
+	}
+
+
+	public void setCounts(long[] counts) {
+		this.counts = counts;
+	}
+
+}
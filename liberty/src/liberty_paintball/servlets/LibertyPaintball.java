@@ -5,15 +5,23 @@ import java.util.Set;
 
 import javax.ws.rs.core.Application;
 
+import liberty_paintball.cluster.ClusterEndpoint;
 import liberty_paintball.demo.DemoEndpoint;
+import liberty_paintball.endpoints.AsyncAttackEndpoint;
+import liberty_paintball.endpoints.AsyncIntelEndpoint;
+import liberty_paintball.endpoints.AsyncJoinEndpoint;
+import liberty_paintball.endpoints.AsyncUpdateLocationEndpoint;
 import liberty_paintball.endpoints.AttackEndpoint;
+import liberty_paintball.endpoints.BatchEndpoint;
 import liberty_paintball.endpoints.RequestIDEndpoint;
+import liberty_paintball.endpoints.HeatmapEndpoint;
 import liberty_paintball.endpoints.IntelEndpoint;
 import liberty_paintball.endpoints.JoinEndpoint;
 import liberty_paintball.endpoints.LeaveEndpoint;
 import liberty_paintball.endpoints.MapEndpoint;
 import liberty_paintball.endpoints.OmniscienceEndpoint;
 import liberty_paintball.endpoints.ResetEndpoint;
+import liberty_paintball.endpoints.TimelineQueryEndpoint;
 import liberty_paintball.endpoints.UpdateLocationEndpoint;
 
 /**
@@ -21,6 +29,10 @@ import liberty_paintball.endpoints.UpdateLocationEndpoint;
  * 
  * Liberty Paintball servlet. Defines all the REST endpoint classes.
  *
+ * The asynchronous endpoints need JAX-RS 2.0 (the jaxrs-2.0 feature) for AsyncResponse. On a server with
+ * only JAX-RS 1.1 they're left out rather than stopping the whole application from loading, and clients
+ * use the blocking endpoints.
+ *
  */
 public class LibertyPaintball extends Application {
 
@@ -41,8 +53,41 @@ public class LibertyPaintball extends Application {
 		classes.add(RequestIDEndpoint.class);
 		classes.add(ResetEndpoint.class);
 		classes.add(DemoEndpoint.class);
+		classes.add(BatchEndpoint.class);
+		classes.add(TimelineQueryEndpoint.class);
+		classes.add(HeatmapEndpoint.class);
+		classes.add(ClusterEndpoint.class);
+		if (isAsyncResponseAvailable()) {
+			AsyncEndpoints.addTo(classes);
+		} else {
+			System.out.println("INFO JAX-RS 2.0 isn't available. The asynchronous endpoints won't be served.");
+		}
 		
 		return classes;
 	}
 
+
+	private static boolean isAsyncResponseAvailable() {
+		try {
+			Class.forName("javax.ws.rs.container.AsyncResponse", false, LibertyPaintball.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Kept apart so the asynchronous endpoint classes, which refer to AsyncResponse, are only loaded
+	 * once it's known to be there.
+	 */
+	private static final class AsyncEndpoints {
+
+		private static void addTo(Set<Class<?>> classes) {
+			classes.add(AsyncAttackEndpoint.class);
+			classes.add(AsyncIntelEndpoint.class);
+			classes.add(AsyncJoinEndpoint.class);
+			classes.add(AsyncUpdateLocationEndpoint.class);
+		}
+	}
+
 }